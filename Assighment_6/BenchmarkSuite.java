@@ -0,0 +1,456 @@
+package graphs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Micro-benchmark suite for the graphs package. It times Graph.addEdge, getEdge,
+ * edgesOf and dijkstraShortestPath, TownGraphManager.getPath and populateTownGraph,
+ * GraphSnapshot.getEdge, and finding a road in edgeSet by an equal Road, on
+ * synthetic grid and random geometric road networks of several sizes, and writes
+ * the results as JSON so that runs of different releases can be compared.
+ *
+ * Measurements follow the JMH average-time mode: each benchmark gets warm-up
+ * iterations that are thrown away, then measurement iterations of a fixed
+ * minimum duration, each reporting nanoseconds per operation. Set-up work such
+ * as creating an empty graph before addEdge is done outside the timed region.
+ * The JSON file uses the field names of JMH's JSON result format, so existing
+ * JMH result viewers can read it.
+ *
+ * Usage: java [-Xmx8g] graphs.BenchmarkSuite [options]
+ * <pre>
+ * --sizes 1000,10000,100000,1000000   town counts of the generated networks
+ * --networks grid,geometric           network shapes
+ * --benchmarks addEdge,getEdge,...    benchmarks to run (default all)
+ * --warmup 2 --iterations 5           iterations per benchmark
+ * --millis 500                        minimum duration of each iteration
+ * --out benchmark-results.json        JSON output file
+ * </pre>
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class BenchmarkSuite {
+
+    /** Names of all benchmarks, in the order they run. */
+    public static final List<String> BENCHMARKS = Arrays.asList("addEdge", "getEdge", "edgesOf",
+            "dijkstraShortestPath", "getPath", "populateTownGraph", "snapshotGetEdge", "edgeSetContains");
+
+    // Calls made per timed run by the lookup benchmarks
+    private static final int LOOKUPS = 10000;
+
+    // Keeps results alive so the JIT cannot drop the work being timed
+    private static long sink;
+
+    private List<Integer> sizes = Arrays.asList(1000, 10000, 100000, 1000000);
+    private List<String> networks = Arrays.asList("grid", "geometric");
+    private List<String> benchmarks = BENCHMARKS;
+    private int warmup = 2;
+    private int iterations = 5;
+    private int millis = 500;
+    private File out = new File("benchmark-results.json");
+
+    /**
+     * Runs the suite and writes the JSON results.
+     *
+     * @param args the options described in the class comment
+     * @throws IOException if a road file or the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        BenchmarkSuite suite = new BenchmarkSuite();
+        suite._parse(args);
+        suite.run();
+    }
+
+    /**
+     * Runs every selected benchmark on every selected network, printing a table as it
+     * goes, and writes the JSON results.
+     *
+     * @return the results, in the order they were measured
+     * @throws IOException if a road file or the results cannot be written
+     */
+    public List<Result> run() throws IOException {
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-22s %-10s %9s %14s %12s%n", "benchmark", "network", "towns", "ns/op", "error");
+        for (String network : networks) {
+            for (int size : sizes) {
+                Network net = new Network(network, size);
+                for (String benchmark : benchmarks) {
+                    Result result = _measure(benchmark, net);
+                    results.add(result);
+                    System.out.printf("%-22s %-10s %9d %14.1f %12.1f%n", benchmark, network, result.towns, result.score,
+                            result.error());
+                }
+                net.close();
+            }
+        }
+        _write(results);
+        System.out.println("Results written to " + out.getAbsolutePath());
+        return results;
+    }
+
+    // Helper method to read the command-line options
+    private void _parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--sizes":
+                sizes = new ArrayList<>();
+                for (String s : value.split(",")) {
+                    sizes.add(Integer.parseInt(s.trim()));
+                }
+                break;
+            case "--networks":
+                networks = Arrays.asList(value.split(","));
+                break;
+            case "--benchmarks":
+                benchmarks = Arrays.asList(value.split(","));
+                break;
+            case "--warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "--iterations":
+                iterations = Integer.parseInt(value);
+                break;
+            case "--millis":
+                millis = Integer.parseInt(value);
+                break;
+            case "--out":
+                out = new File(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        for (String benchmark : benchmarks) {
+            if (!BENCHMARKS.contains(benchmark)) {
+                throw new IllegalArgumentException("Unknown benchmark " + benchmark + "; expected one of " + BENCHMARKS);
+            }
+        }
+    }
+
+    // Helper method to run the warm-up and measurement iterations of one benchmark
+    private Result _measure(String benchmark, Network net) throws IOException {
+        Trial trial = _trial(benchmark, net, new Random(7));
+        double[] scores = new double[iterations];
+        for (int i = -warmup; i < iterations; i++) {
+            long nanos = 0;
+            long ops = 0;
+            while (nanos < millis * 1_000_000L) {
+                trial.prepare();
+                long start = System.nanoTime();
+                ops += trial.run();
+                nanos += System.nanoTime() - start;
+            }
+            if (i >= 0) {
+                scores[i] = (double) nanos / ops;
+            }
+        }
+        return new Result(benchmark, net, scores);
+    }
+
+    // Helper method to set up the timed operation of a benchmark on a network
+    private Trial _trial(String benchmark, Network net, Random random) throws IOException {
+        Town[] towns = net.towns;
+        Road[] roads = net.roads;
+        switch (benchmark) {
+        case "addEdge":
+            return new Trial() {
+                private Graph graph;
+
+                @Override
+                public void prepare() {
+                    graph = new Graph();
+                    for (Town t : towns) {
+                        graph.addVertex(t);
+                    }
+                }
+
+                @Override
+                public int run() {
+                    for (Road r : roads) {
+                        graph.addEdge(r.getSource(), r.getDestination(), r.getWeight(), r.getName());
+                    }
+                    return roads.length;
+                }
+            };
+        case "getEdge":
+            return () -> {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    Road r = roads[random.nextInt(roads.length)];
+                    sink += net.graph.getEdge(r.getDestination(), r.getSource()).getWeight();
+                }
+                return LOOKUPS;
+            };
+        case "edgesOf":
+            return () -> {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    sink += net.graph.edgesOf(towns[random.nextInt(towns.length)]).size();
+                }
+                return LOOKUPS;
+            };
+        case "dijkstraShortestPath":
+            return () -> {
+                net.graph.dijkstraShortestPath(towns[random.nextInt(towns.length)]);
+                sink += net.graph.lastShortestPathTree().getDistance(towns[random.nextInt(towns.length)]);
+                return 1;
+            };
+        case "getPath":
+            TownGraphManager manager = new TownGraphManager();
+            manager.populateTownGraph(net.roadFile());
+            return () -> {
+                sink += manager.getPath(towns[random.nextInt(towns.length)].getName(),
+                        towns[random.nextInt(towns.length)].getName()).size();
+                return 1;
+            };
+        case "snapshotGetEdge":
+            GraphSnapshot snapshot = net.graph.snapshot();
+            return () -> {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    Road r = roads[random.nextInt(roads.length)];
+                    sink += snapshot.getEdge(r.getDestination(), r.getSource()).getWeight();
+                }
+                return LOOKUPS;
+            };
+        case "edgeSetContains":
+            Set<Road> edges = net.graph.edgeSet();
+            return () -> {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    Road r = roads[random.nextInt(roads.length)];
+                    sink += edges.contains(new Road(r.getDestination(), r.getSource(), r.getName())) ? 1 : 0;
+                }
+                return LOOKUPS;
+            };
+        case "populateTownGraph":
+            File file = net.roadFile();
+            return () -> {
+                sink += new TownGraphManager().populateTownGraph(file).getRoadsAdded();
+                return 1;
+            };
+        default:
+            throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+        }
+    }
+
+    // Helper method to write the results as a JSON array in the layout of JMH's JSON output
+    private void _write(List<Result> results) throws IOException {
+        try (PrintWriter json = new PrintWriter(out, "UTF-8")) {
+            json.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                json.println("    {");
+                json.println("        \"benchmark\" : \"graphs." + _qualified(r.benchmark) + "\",");
+                json.println("        \"mode\" : \"avgt\",");
+                json.println("        \"threads\" : 1,");
+                json.println("        \"jdkVersion\" : \"" + System.getProperty("java.version") + "\",");
+                json.println("        \"warmupIterations\" : " + warmup + ",");
+                json.println("        \"measurementIterations\" : " + iterations + ",");
+                json.println("        \"measurementTime\" : \"" + millis + " ms\",");
+                json.println("        \"params\" : {");
+                json.println("            \"network\" : \"" + r.network + "\",");
+                json.println("            \"towns\" : \"" + r.towns + "\",");
+                json.println("            \"roads\" : \"" + r.roads + "\"");
+                json.println("        },");
+                json.println("        \"primaryMetric\" : {");
+                json.println("            \"score\" : " + _number(r.score) + ",");
+                json.println("            \"scoreError\" : " + _number(r.error()) + ",");
+                json.println("            \"scoreUnit\" : \"ns/op\",");
+                StringBuilder raw = new StringBuilder();
+                for (double s : r.scores) {
+                    raw.append(raw.length() == 0 ? "" : ", ").append(_number(s));
+                }
+                json.println("            \"rawData\" : [ [ " + raw + " ] ]");
+                json.println("        }");
+                json.println(i + 1 < results.size() ? "    }," : "    }");
+            }
+            json.println("]");
+        }
+    }
+
+    // Helper method to name a benchmark after the class and method it times
+    private static String _qualified(String benchmark) {
+        switch (benchmark) {
+        case "getPath":
+        case "populateTownGraph":
+            return "TownGraphManager." + benchmark;
+        case "snapshotGetEdge":
+            return "GraphSnapshot.getEdge";
+        case "edgeSetContains":
+            return "Graph.edgeSet.contains";
+        default:
+            return "Graph." + benchmark;
+        }
+    }
+
+    // Helper method to format a number for JSON, which has no NaN
+    private static String _number(double d) {
+        return Double.isNaN(d) ? "null" : String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    // The operation timed by a benchmark. run returns the number of operations it performed.
+    private interface Trial {
+        default void prepare() {
+        }
+
+        int run() throws IOException;
+    }
+
+    // A generated road network together with the road file it is loaded from
+    private static class Network {
+        private final String kind;
+        private final Town[] towns;
+        private final Graph graph;
+        private final Road[] roads;
+        private File file;
+
+        Network(String kind, int size) {
+            this.kind = kind;
+            Random random = new Random(42);
+            if (kind.equals("grid")) {
+                int side = (int) Math.ceil(Math.sqrt(size));
+                towns = new Town[side * side];
+                graph = RoutingBenchmark.grid(side, towns, random);
+            } else if (kind.equals("geometric")) {
+                towns = new Town[size];
+                graph = RoutingBenchmark.geometric(towns, random);
+            } else {
+                throw new IllegalArgumentException("Unknown network " + kind + "; expected grid or geometric");
+            }
+            Set<Road> roadSet = graph.edgeSet();
+            roads = roadSet.toArray(new Road[0]);
+            Arrays.sort(roads, (a, b) -> a.getName().compareTo(b.getName()));
+        }
+
+        // Writes the network as a road file the first time it is needed
+        File roadFile() throws IOException {
+            if (file == null) {
+                file = File.createTempFile("roads-" + kind + "-" + towns.length + "-", ".txt");
+                file.deleteOnExit();
+                try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                    for (Road r : roads) {
+                        writer.println(r.getName() + "," + r.getWeight() + ";" + r.getSource().getName() + ";"
+                                + r.getDestination().getName());
+                    }
+                }
+            }
+            return file;
+        }
+
+        void close() {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * The measurement of one benchmark on one network.
+     */
+    public static class Result {
+        // t(0.9995, df) for df = 1 to 30
+        private static final double[] T_999 = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+                4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792, 3.768,
+                3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+        private final String benchmark;
+        private final String network;
+        private final int towns;
+        private final int roads;
+        private final double[] scores;
+        private final double score;
+
+        Result(String benchmark, Network net, double[] scores) {
+            this.benchmark = benchmark;
+            this.network = net.kind;
+            this.towns = net.towns.length;
+            this.roads = net.roads.length;
+            this.scores = scores;
+            double total = 0;
+            for (double s : scores) {
+                total += s;
+            }
+            score = total / scores.length;
+        }
+
+        /**
+         * Gets the name of the benchmark.
+         *
+         * @return the benchmark name
+         */
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        /**
+         * Gets the shape of the network.
+         *
+         * @return grid or geometric
+         */
+        public String getNetwork() {
+            return network;
+        }
+
+        /**
+         * Gets the number of towns in the network.
+         *
+         * @return the town count
+         */
+        public int getTowns() {
+            return towns;
+        }
+
+        /**
+         * Gets the average time per operation over the measurement iterations.
+         *
+         * @return the score in nanoseconds per operation
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Gets the half-width of the 99.9% confidence interval of the score, using
+         * Student's t distribution with one degree of freedom fewer than there are
+         * iterations, as JMH does for its scoreError.
+         *
+         * @return the error in nanoseconds per operation; NaN with fewer than two iterations
+         */
+        public double error() {
+            if (scores.length < 2) {
+                return Double.NaN;
+            }
+            double squares = 0;
+            for (double s : scores) {
+                squares += (s - score) * (s - score);
+            }
+            return _tQuantile(scores.length - 1) * Math.sqrt(squares / (scores.length - 1)) / Math.sqrt(scores.length);
+        }
+
+        // Helper method to get the two-sided 99.9% quantile of Student's t distribution, t(0.9995, df).
+        // Up to 30 degrees of freedom it is read from a table; beyond that it is interpolated in
+        // 1 / df between the values at 30, 40, 60, 120 and infinity (the normal value 3.291).
+        private static double _tQuantile(int df) {
+            if (df <= T_999.length) {
+                return T_999[df - 1];
+            }
+            double[] dfs = { 30, 40, 60, 120, Double.POSITIVE_INFINITY };
+            double[] ts = { 3.646, 3.551, 3.460, 3.373, 3.291 };
+            int i = 1;
+            while (df > dfs[i]) {
+                i++;
+            }
+            double x = 1.0 / df;
+            double x0 = 1.0 / dfs[i - 1];
+            double x1 = 1.0 / dfs[i];
+            return ts[i - 1] + (ts[i] - ts[i - 1]) * (x - x0) / (x1 - x0);
+        }
+    }
+}
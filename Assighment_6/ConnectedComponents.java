@@ -0,0 +1,106 @@
+package graphs;
+
+/**
+ * The connected regions of a GraphSnapshot. Every town is labelled with the
+ * number of its component once, with a union-find pass over the roads, so
+ * checking whether two towns are connected is two array lookups.
+ *
+ * Components are numbered from 0 in the order of their first town id, so the
+ * numbering only depends on the towns and roads of the snapshot.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class ConnectedComponents {
+
+    private final GraphSnapshot snapshot;
+    private final int[] component;  // Component of each town id
+    private final int[] sizes;      // Number of towns in each component
+
+    /**
+     * Labels the components of a snapshot.
+     *
+     * @param snapshot The snapshot to label.
+     */
+    ConnectedComponents(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+        int townCount = snapshot.townCount();
+        int[] sources = snapshot.roadSources();
+        int[] destinations = snapshot.roadDestinations();
+
+        UnionFind sets = new UnionFind(townCount);
+        for (int r = 0; r < sources.length; r++) {
+            sets.union(sources[r], destinations[r]);
+        }
+
+        component = new int[townCount];
+        sizes = new int[sets.sets()];
+        int[] label = new int[townCount];
+        int next = 0;
+        for (int i = 0; i < townCount; i++) {
+            int root = sets.find(i);
+            if (label[root] == 0) {
+                label[root] = ++next;
+            }
+            component[i] = label[root] - 1;
+            sizes[component[i]]++;
+        }
+    }
+
+    /**
+     * Gets the number of components.
+     *
+     * @return The number of disconnected regions; 0 for an empty graph.
+     */
+    public int getComponentCount() {
+        return sizes.length;
+    }
+
+    /**
+     * Gets the component a town belongs to.
+     *
+     * @param t The town to look up.
+     * @return The component number, from 0 to getComponentCount() - 1, or -1 if the town is not in the graph.
+     */
+    public int componentOf(Town t) {
+        int id = snapshot.idOf(t);
+        return id < 0 ? -1 : component[id];
+    }
+
+    /**
+     * Gets the number of towns in a component.
+     *
+     * @param c The component number.
+     * @return The number of towns in it.
+     */
+    public int getComponentSize(int c) {
+        return sizes[c];
+    }
+
+    /**
+     * Checks if a path exists between two towns.
+     *
+     * @param town1 The first town.
+     * @param town2 The second town.
+     * @return true if both towns are in the graph and in the same component, false otherwise.
+     */
+    public boolean isConnected(Town town1, Town town2) {
+        int c = componentOf(town1);
+        return c >= 0 && c == componentOf(town2);
+    }
+
+    /**
+     * Returns a one-line summary of the components.
+     *
+     * @return The number of components and the size of the largest one.
+     */
+    @Override
+    public String toString() {
+        int largest = 0;
+        for (int s : sizes) {
+            largest = Math.max(largest, s);
+        }
+        return sizes.length + " components, largest has " + largest + " towns";
+    }
+}
@@ -0,0 +1,616 @@
+package graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A contraction hierarchies (CH) index over a snapshot of a Graph, for fast
+ * point-to-point routing on a map that rarely changes.
+ *
+ * Building the index contracts the towns one at a time, least important first.
+ * Contracting a town removes it from the remaining graph and adds a shortcut
+ * between two of its neighbors whenever the only shortest way between them
+ * ran through it. The contraction order gives every town a rank. A query then
+ * runs two small Dijkstra searches, from the source and from the destination,
+ * that only follow roads and shortcuts toward higher-ranked towns, and meets
+ * in the middle. Shortcuts are unpacked back into the original roads, so the
+ * result is described in the same "A via R to B N mi" format as
+ * Graph.shortestPath.
+ *
+ * The index does not follow later changes to the graph; getVersion tells which
+ * graph version it was built from.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class ContractionHierarchy {
+
+    private static final int NONE = -1;
+
+    // Witness searches give up after settling this many towns and add the shortcut anyway
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final GraphSnapshot snapshot;  // Towns, roads and their ids
+    private final int[] rank;              // Contraction order of each town
+
+    // Roads and shortcuts by edge id. A shortcut from edgeFrom[e] through its middle town
+    // stands for edgeChildA[e] (the end at edgeFrom[e]) followed by edgeChildB[e].
+    // Original roads have no children and keep their road id in edgeRoad[e].
+    // edgeWeight is only needed while building and is dropped afterwards.
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int[] edgeWeight;
+    private int[] edgeChildA;
+    private int[] edgeChildB;
+    private int[] edgeRoad;
+    private int edgeCount;
+
+    // Upward graph in CSR form: for each town, the edges leading to higher-ranked towns
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upWeights;
+    private final int[] upEdges;
+
+    private final int shortcutCount;
+    private final long buildNanos;
+
+    // Query state of each thread, kept between queries so its arrays are reused
+    private final ThreadLocal<Query> queries;
+
+    /**
+     * Builds a contraction hierarchy for the current state of a graph.
+     *
+     * @param graph The graph to index.
+     * @throws IllegalArgumentException if the graph is directed.
+     */
+    public ContractionHierarchy(Graph graph) {
+        this(graph.snapshot());
+    }
+
+    /**
+     * Builds a contraction hierarchy for a graph snapshot.
+     *
+     * @param snapshot The snapshot to index.
+     * @throws IllegalArgumentException if the snapshot is directed; shortcuts are undirected.
+     */
+    public ContractionHierarchy(GraphSnapshot snapshot) {
+        if (snapshot.isDirected()) {
+            throw new IllegalArgumentException("Contraction hierarchies need an undirected snapshot");
+        }
+        long start = System.nanoTime();
+        this.snapshot = snapshot;
+        int n = snapshot.townCount();
+
+        int capacity = Math.max(16, snapshot.roadCount() * 2);
+        edgeFrom = new int[capacity];
+        edgeTo = new int[capacity];
+        edgeWeight = new int[capacity];
+        edgeChildA = new int[capacity];
+        edgeChildB = new int[capacity];
+        edgeRoad = new int[capacity];
+
+        int[] offsets = snapshot.offsets();
+        int[] targets = snapshot.targets();
+        int[] weights = snapshot.weights();
+        int[] roadIds = snapshot.roadIds();
+        Builder builder = new Builder(n);
+        for (int u = 0; u < n; u++) {
+            for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                int v = targets[slot];
+                if (u < v) {
+                    builder.link(_addEdge(u, v, weights[slot], NONE, NONE, roadIds[slot]));
+                }
+            }
+        }
+
+        int roads = edgeCount;
+        rank = builder.contractAll();
+        shortcutCount = edgeCount - roads;
+
+        upOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            upOffsets[_lower(e) + 1]++;
+        }
+        for (int u = 0; u < n; u++) {
+            upOffsets[u + 1] += upOffsets[u];
+        }
+        upTargets = new int[edgeCount];
+        upWeights = new int[edgeCount];
+        upEdges = new int[edgeCount];
+        int[] next = Arrays.copyOf(upOffsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            int slot = next[_lower(e)]++;
+            upTargets[slot] = _higher(e);
+            upWeights[slot] = edgeWeight[e];
+            upEdges[slot] = e;
+        }
+
+        edgeFrom = Arrays.copyOf(edgeFrom, edgeCount);
+        edgeTo = Arrays.copyOf(edgeTo, edgeCount);
+        edgeChildA = Arrays.copyOf(edgeChildA, edgeCount);
+        edgeChildB = Arrays.copyOf(edgeChildB, edgeCount);
+        edgeRoad = Arrays.copyOf(edgeRoad, edgeCount);
+        edgeWeight = null;
+
+        queries = ThreadLocal.withInitial(Query::new);
+        buildNanos = System.nanoTime() - start;
+    }
+
+    // Helper method to append an edge and return its id
+    private int _addEdge(int from, int to, int weight, int childA, int childB, int road) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeChildA = Arrays.copyOf(edgeChildA, capacity);
+            edgeChildB = Arrays.copyOf(edgeChildB, capacity);
+            edgeRoad = Arrays.copyOf(edgeRoad, capacity);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeWeight[edgeCount] = weight;
+        edgeChildA[edgeCount] = childA;
+        edgeChildB[edgeCount] = childB;
+        edgeRoad[edgeCount] = road;
+        return edgeCount++;
+    }
+
+    // Helper method to get the lower-ranked end of an edge
+    private int _lower(int e) {
+        return rank[edgeFrom[e]] < rank[edgeTo[e]] ? edgeFrom[e] : edgeTo[e];
+    }
+
+    // Helper method to get the higher-ranked end of an edge
+    private int _higher(int e) {
+        return rank[edgeFrom[e]] < rank[edgeTo[e]] ? edgeTo[e] : edgeFrom[e];
+    }
+
+    /**
+     * Gets the version of the graph the index was built from.
+     *
+     * @return The graph version.
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Gets the number of shortcuts added while building the index.
+     *
+     * @return The number of shortcuts.
+     */
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+
+    /**
+     * Gets the time it took to build the index.
+     *
+     * @return The build time in milliseconds.
+     */
+    public double getBuildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    /**
+     * Estimates the heap used by the index on top of the snapshot it was built from.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long memoryBytes() {
+        long ints = rank.length + upOffsets.length + 3L * upTargets.length + 5L * edgeFrom.length;
+        return 4 * ints;
+    }
+
+    /**
+     * Finds the shortest path between two towns.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The steps of the path in the format "Town_1 via Road_2 to Town_3 4 mi";
+     *         empty if the towns are the same, unknown or not connected.
+     */
+    public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex) {
+        return route(sourceVertex, destinationVertex).toSteps();
+    }
+
+    /**
+     * Finds the shortest route between two towns with the same query as shortestPath,
+     * unpacking shortcuts into the original roads without formatting the steps.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The route; not found if either town is unknown or the towns are not connected.
+     */
+    public Route route(Town sourceVertex, Town destinationVertex) {
+        int source = snapshot.idOf(sourceVertex);
+        int target = snapshot.idOf(destinationVertex);
+        if (source == NONE || target == NONE) {
+            return Route.notFound();
+        }
+        if (source == target) {
+            return new Route(snapshot, new int[] { source }, new int[0], 0);
+        }
+
+        Query query = queries.get();
+        int meeting = query.run(source, target);
+        if (meeting == NONE) {
+            return Route.notFound();
+        }
+
+        // Count the original roads on both sides of the meeting town
+        int forwardHops = 0;
+        for (int t = meeting; t != source; t = _other(query.forwardEdge[t], t)) {
+            forwardHops += _hops(query.forwardEdge[t]);
+        }
+        int hops = forwardHops;
+        for (int t = meeting; t != target; t = _other(query.backwardEdge[t], t)) {
+            hops += _hops(query.backwardEdge[t]);
+        }
+
+        // The forward edges are found from the meeting town back to the source, so each is
+        // unpacked into the slots just before the previous one
+        int[] townIds = new int[hops + 1];
+        int[] roadIds = new int[hops];
+        townIds[0] = source;
+        int end = forwardHops;
+        for (int t = meeting; t != source; t = _other(query.forwardEdge[t], t)) {
+            int e = query.forwardEdge[t];
+            int from = _other(e, t);
+            int start = end - _hops(e);
+            townIds[start] = from;
+            _unpack(e, from, townIds, roadIds, start);
+            end = start;
+        }
+        int at = forwardHops;
+        for (int t = meeting; t != target; t = _other(query.backwardEdge[t], t)) {
+            int e = query.backwardEdge[t];
+            _unpack(e, t, townIds, roadIds, at);
+            at += _hops(e);
+        }
+        return new Route(snapshot, townIds, roadIds, query.forwardDistance[meeting] + query.backwardDistance[meeting]);
+    }
+
+    /**
+     * Finds the length of the shortest path between two towns.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The distance, or Integer.MAX_VALUE if the towns are unknown or not connected.
+     */
+    public int distance(Town sourceVertex, Town destinationVertex) {
+        int source = snapshot.idOf(sourceVertex);
+        int target = snapshot.idOf(destinationVertex);
+        if (source == NONE || target == NONE) {
+            return Integer.MAX_VALUE;
+        }
+        if (source == target) {
+            return 0;
+        }
+
+        Query query = queries.get();
+        int meeting = query.run(source, target);
+        return meeting == NONE ? Integer.MAX_VALUE : query.forwardDistance[meeting] + query.backwardDistance[meeting];
+    }
+
+    /**
+     * Adds the running totals of the calling thread's queries to the given counts,
+     * like Graph.addSearchCounts.
+     *
+     * @param counts The counts to add to.
+     */
+    void addSearchCounts(SearchCounts counts) {
+        Query query = queries.get();
+        counts.add(query.settles, query.relaxations, query.heapOperations);
+    }
+
+    // Helper method to get the end of an edge opposite to the given town
+    private int _other(int e, int town) {
+        return edgeFrom[e] == town ? edgeTo[e] : edgeFrom[e];
+    }
+
+    // Helper method to count the original roads an edge stands for
+    private int _hops(int e) {
+        return edgeChildA[e] == NONE ? 1 : _hops(edgeChildA[e]) + _hops(edgeChildB[e]);
+    }
+
+    // Helper method to unpack an edge, travelled starting at the given town, into original roads.
+    // Writes the roads from slot i on, with the town each one leads to in the slot after it,
+    // and returns the slot after the last road.
+    private int _unpack(int e, int from, int[] townIds, int[] roadIds, int i) {
+        if (edgeChildA[e] == NONE) {
+            roadIds[i] = edgeRoad[e];
+            townIds[i + 1] = _other(e, from);
+            return i + 1;
+        }
+        int first = edgeFrom[e] == from ? edgeChildA[e] : edgeChildB[e];
+        int second = first == edgeChildA[e] ? edgeChildB[e] : edgeChildA[e];
+        int middle = _unpack(first, from, townIds, roadIds, i);
+        return _unpack(second, townIds[middle], townIds, roadIds, middle);
+    }
+
+    /**
+     * Returns a summary of the index.
+     *
+     * @return A string with the size, build time and memory use of the index.
+     */
+    @Override
+    public String toString() {
+        return "ContractionHierarchy towns=" + rank.length + " edges=" + edgeFrom.length + " shortcuts=" + shortcutCount
+                + " build=" + String.format("%.1f", getBuildMillis()) + "ms memory=" + memoryBytes() + "B";
+    }
+
+    // Contraction state used while building the index
+    private class Builder {
+        private final int[][] adjacency;     // Edge ids of each town's remaining roads and shortcuts
+        private final int[] degree;          // Number of used entries in each adjacency row
+        private final boolean[] contracted;
+        private final int[] deletedNeighbors;
+
+        // Cheapest edge to each neighbor of the town being contracted, found through a stamp
+        private final int[] neighborStamp;
+        private final int[] neighborIndex;
+        private int neighborEpoch;
+
+        // Neighbors a witness search still has to settle; the search stops once none are left
+        private final int[] targetStamp;
+        private int targetEpoch;
+
+        // Witness search state, stamped like the query state
+        private final int[] distance;
+        private final int[] stamp;
+        private final IntMinHeap heap;
+        private int epoch;
+
+        Builder(int n) {
+            adjacency = new int[n][];
+            degree = new int[n];
+            contracted = new boolean[n];
+            deletedNeighbors = new int[n];
+            neighborStamp = new int[n];
+            neighborIndex = new int[n];
+            targetStamp = new int[n];
+            distance = new int[n];
+            stamp = new int[n];
+            heap = new IntMinHeap(n);
+            Arrays.fill(adjacency, new int[0]);
+        }
+
+        // Records an edge in the adjacency rows of both of its towns
+        void link(int e) {
+            _append(edgeFrom[e], e);
+            _append(edgeTo[e], e);
+        }
+
+        private void _append(int town, int e) {
+            if (degree[town] == adjacency[town].length) {
+                adjacency[town] = Arrays.copyOf(adjacency[town], Math.max(4, degree[town] * 2));
+            }
+            adjacency[town][degree[town]++] = e;
+        }
+
+        // Drops every edge leading to a contracted town from another town's row
+        private void _unlinkContracted(int town) {
+            int[] row = adjacency[town];
+            int kept = 0;
+            for (int i = 0; i < degree[town]; i++) {
+                if (!contracted[_other(row[i], town)]) {
+                    row[kept++] = row[i];
+                }
+            }
+            degree[town] = kept;
+        }
+
+        // Contracts every town, least important first, and returns the rank of each town
+        int[] contractAll() {
+            int n = adjacency.length;
+            int[] order = new int[n];
+            IntMinHeap queue = new IntMinHeap(n);
+            for (int v = 0; v < n; v++) {
+                queue.push(v, _priority(v));
+            }
+
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                // Lazy update: priorities of the remaining towns drift as their neighbors go
+                int priority = _priority(v);
+                if (!queue.isEmpty() && priority > queue.peekKey()) {
+                    queue.push(v, priority);
+                    continue;
+                }
+                _contract(v, true);
+                order[v] = next++;
+            }
+            return order;
+        }
+
+        // Edge difference (shortcuts added minus edges removed) plus contracted neighbors
+        private int _priority(int v) {
+            return _contract(v, false) - degree[v] + deletedNeighbors[v];
+        }
+
+        // Finds the shortcuts needed to contract v and adds them when apply is set.
+        // Returns the number of shortcuts.
+        private int _contract(int v, boolean apply) {
+            // Cheapest edge to each neighbor; parallel edges and self loops are skipped
+            if (++neighborEpoch == 0) {
+                Arrays.fill(neighborStamp, 0);
+                neighborEpoch = 1;
+            }
+            int count = 0;
+            int[] neighbors = new int[degree[v]];
+            int[] edges = new int[degree[v]];
+            for (int i = 0; i < degree[v]; i++) {
+                int e = adjacency[v][i];
+                int u = _other(e, v);
+                if (u == v) {
+                    continue;
+                }
+                if (neighborStamp[u] != neighborEpoch) {
+                    neighborStamp[u] = neighborEpoch;
+                    neighborIndex[u] = count;
+                    neighbors[count] = u;
+                    edges[count++] = e;
+                } else if (edgeWeight[e] < edgeWeight[edges[neighborIndex[u]]]) {
+                    edges[neighborIndex[u]] = e;
+                }
+            }
+
+            int maxWeight = 0;
+            for (int i = 0; i < count; i++) {
+                maxWeight = Math.max(maxWeight, edgeWeight[edges[i]]);
+            }
+
+            // Estimating a priority only needs a rough witness search
+            int settleLimit = apply ? WITNESS_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT / 10;
+            int shortcuts = 0;
+            for (int i = 0; i < count - 1; i++) {
+                int u = neighbors[i];
+                int viaWeight = edgeWeight[edges[i]];
+                if (++targetEpoch == 0) {
+                    Arrays.fill(targetStamp, 0);
+                    targetEpoch = 1;
+                }
+                for (int j = i + 1; j < count; j++) {
+                    targetStamp[neighbors[j]] = targetEpoch;
+                }
+                _witnessSearch(u, v, viaWeight + maxWeight, settleLimit, count - i - 1);
+                for (int j = i + 1; j < count; j++) {
+                    int w = neighbors[j];
+                    int through = viaWeight + edgeWeight[edges[j]];
+                    if (stamp[w] != epoch || distance[w] > through) {
+                        shortcuts++;
+                        if (apply) {
+                            link(_addEdge(u, w, through, edges[i], edges[j], NONE));
+                        }
+                    }
+                }
+            }
+
+            if (apply) {
+                contracted[v] = true;
+                for (int i = 0; i < count; i++) {
+                    deletedNeighbors[neighbors[i]]++;
+                    _unlinkContracted(neighbors[i]);
+                }
+            }
+            return shortcuts;
+        }
+
+        // Dijkstra from u over the remaining towns without passing through v, up to a distance
+        // limit and a number of settled towns, or until all marked target towns are settled
+        private void _witnessSearch(int u, int v, int limit, int settleLimit, int targets) {
+            heap.clear();
+            if (++epoch == 0) {
+                Arrays.fill(stamp, 0);
+                epoch = 1;
+            }
+            stamp[u] = epoch;
+            distance[u] = 0;
+            heap.push(u, 0);
+
+            int settled = 0;
+            while (targets > 0 && !heap.isEmpty() && heap.peekKey() <= limit && settled++ < settleLimit) {
+                int x = heap.poll();
+                if (targetStamp[x] == targetEpoch) {
+                    targets--;
+                }
+                int dx = distance[x];
+                for (int i = 0; i < degree[x]; i++) {
+                    int e = adjacency[x][i];
+                    int y = _other(e, x);
+                    if (y == v) {
+                        continue;
+                    }
+                    int dy = dx + edgeWeight[e];
+                    if (stamp[y] != epoch || dy < distance[y]) {
+                        stamp[y] = epoch;
+                        distance[y] = dy;
+                        heap.push(y, dy);
+                    }
+                }
+            }
+        }
+    }
+
+    // Bidirectional upward search state of one thread
+    private class Query {
+        private final int[] forwardDistance = new int[rank.length];
+        private final int[] backwardDistance = new int[rank.length];
+        private final int[] forwardEdge = new int[rank.length];
+        private final int[] backwardEdge = new int[rank.length];
+        private final int[] forwardStamp = new int[rank.length];
+        private final int[] backwardStamp = new int[rank.length];
+        private final IntMinHeap forwardHeap = new IntMinHeap(rank.length);
+        private final IntMinHeap backwardHeap = new IntMinHeap(rank.length);
+        private int epoch;
+
+        // Running totals reported by addSearchCounts
+        private long settles;
+        private long relaxations;
+        private long heapOperations;
+
+        // Runs both upward searches and returns the town where the shortest path peaks,
+        // or NONE if the towns are not connected
+        int run(int source, int target) {
+            forwardHeap.clear();
+            backwardHeap.clear();
+            if (++epoch == 0) {
+                Arrays.fill(forwardStamp, 0);
+                Arrays.fill(backwardStamp, 0);
+                epoch = 1;
+            }
+
+            _reach(forwardDistance, forwardEdge, forwardStamp, forwardHeap, source, 0, NONE);
+            _reach(backwardDistance, backwardEdge, backwardStamp, backwardHeap, target, 0, NONE);
+
+            long best = Long.MAX_VALUE;
+            int meeting = NONE;
+            while (true) {
+                boolean forwardOpen = !forwardHeap.isEmpty() && forwardHeap.peekKey() < best;
+                boolean backwardOpen = !backwardHeap.isEmpty() && backwardHeap.peekKey() < best;
+                if (!forwardOpen && !backwardOpen) {
+                    break;
+                }
+
+                boolean forward = forwardOpen && (!backwardOpen || forwardHeap.peekKey() <= backwardHeap.peekKey());
+                int[] dist = forward ? forwardDistance : backwardDistance;
+                int[] edge = forward ? forwardEdge : backwardEdge;
+                int[] stamp = forward ? forwardStamp : backwardStamp;
+                IntMinHeap heap = forward ? forwardHeap : backwardHeap;
+                int[] otherDist = forward ? backwardDistance : forwardDistance;
+                int[] otherStamp = forward ? backwardStamp : forwardStamp;
+
+                int u = heap.poll();
+                settles++;
+                heapOperations++;
+                int du = dist[u];
+                if (otherStamp[u] == epoch && (long) du + otherDist[u] < best) {
+                    best = (long) du + otherDist[u];
+                    meeting = u;
+                }
+
+                for (int slot = upOffsets[u]; slot < upOffsets[u + 1]; slot++) {
+                    int v = upTargets[slot];
+                    int dv = du + upWeights[slot];
+                    relaxations++;
+                    if (stamp[v] != epoch || dv < dist[v]) {
+                        _reach(dist, edge, stamp, heap, v, dv, upEdges[slot]);
+                    }
+                }
+            }
+            return meeting;
+        }
+
+        private void _reach(int[] dist, int[] edge, int[] stamp, IntMinHeap heap, int v, int d, int e) {
+            stamp[v] = epoch;
+            dist[v] = d;
+            edge[v] = e;
+            heap.push(v, d);
+            heapOperations++;
+        }
+    }
+}
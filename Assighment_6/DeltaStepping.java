@@ -0,0 +1,301 @@
+package graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel single-source shortest paths with delta-stepping over the CSR arrays
+ * of a GraphSnapshot.
+ *
+ * Tentative distances are sorted into buckets of width delta. The lowest
+ * non-empty bucket is emptied in rounds: all of its towns relax their light
+ * roads (weight at most delta) at once, spread over a fork-join pool, and towns
+ * whose distance drops into the same bucket form the next round. Once the bucket
+ * stays empty, the heavy roads of every town settled in it are relaxed in one
+ * more parallel step. Distances are lowered with compare-and-set, so workers
+ * never block each other. The result is the same as Dijkstra's algorithm for any
+ * delta; a small delta does less redundant work, a large one gives each round
+ * more towns to share between threads.
+ *
+ * The worker pool is started once with the search and reused by every query, so
+ * thread start-up is not part of any query's time. A search that started its
+ * own pool should be closed when it is no longer needed; a pool given by the
+ * caller is left running.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class DeltaStepping implements AutoCloseable {
+
+    // Rounds with fewer towns than this are relaxed on the calling thread
+    private static final int MIN_PARALLEL_TOWNS = 2048;
+
+    private final GraphSnapshot snapshot;
+    private final int delta;
+    private final int threads;
+    private final ForkJoinPool pool;  // Null when the search runs on one thread
+    private final boolean ownsPool;   // Whether close shuts the pool down
+
+    /**
+     * Constructs a search with a delta of the average road weight.
+     *
+     * @param snapshot The snapshot to search.
+     * @param threads  The number of worker threads.
+     */
+    public DeltaStepping(GraphSnapshot snapshot, int threads) {
+        this(snapshot, defaultDelta(snapshot), threads);
+    }
+
+    /**
+     * Constructs a search with a pool of its own, started now and shut down by close.
+     *
+     * @param snapshot The snapshot to search.
+     * @param delta    The bucket width; roads up to this weight are relaxed in rounds.
+     * @param threads  The number of worker threads.
+     */
+    public DeltaStepping(GraphSnapshot snapshot, int delta, int threads) {
+        this(snapshot, delta, threads, threads > 1 ? new ForkJoinPool(threads) : null, true);
+    }
+
+    /**
+     * Constructs a search that runs on the caller's pool, with as many workers as the
+     * pool's parallelism. Closing the search leaves the pool running.
+     *
+     * @param snapshot The snapshot to search.
+     * @param delta    The bucket width; roads up to this weight are relaxed in rounds.
+     * @param pool     The pool that relaxes the roads.
+     */
+    public DeltaStepping(GraphSnapshot snapshot, int delta, ForkJoinPool pool) {
+        this(snapshot, delta, pool.getParallelism(), pool, false);
+    }
+
+    // Helper constructor shared by the public ones
+    private DeltaStepping(GraphSnapshot snapshot, int delta, int threads, ForkJoinPool pool, boolean ownsPool) {
+        if (delta < 1) {
+            _shutdown(pool, ownsPool);
+            throw new IllegalArgumentException("delta must be positive: " + delta);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.snapshot = snapshot;
+        this.delta = delta;
+        this.threads = threads;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    /**
+     * Gets the delta used when none is given: the average road weight, at least 1.
+     *
+     * @param snapshot The snapshot to search.
+     * @return The default bucket width.
+     */
+    public static int defaultDelta(GraphSnapshot snapshot) {
+        long total = 0;
+        for (int w : snapshot.roadWeights()) {
+            total += w;
+        }
+        return (int) Math.max(1, total / Math.max(1, snapshot.roadCount()));
+    }
+
+    /**
+     * Gets the bucket width.
+     *
+     * @return The delta.
+     */
+    public int getDelta() {
+        return delta;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return The thread count.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Finds the shortest distance from a town to every town of the snapshot.
+     *
+     * @param sourceVertex The source town.
+     * @return The distances indexed by town id; unreachable towns hold GraphSnapshot.UNREACHABLE.
+     *         Every town is unreachable if the source is not in the snapshot.
+     */
+    public int[] distancesFrom(Town sourceVertex) {
+        int source = snapshot.idOf(sourceVertex);
+        int townCount = snapshot.townCount();
+        if (source < 0) {
+            int[] none = new int[townCount];
+            Arrays.fill(none, GraphSnapshot.UNREACHABLE);
+            return none;
+        }
+
+        return new Run(townCount).solve(source);
+    }
+
+    /**
+     * Shuts down the pool the search started, if any. A pool given by the caller is
+     * left running.
+     */
+    @Override
+    public void close() {
+        _shutdown(pool, ownsPool);
+    }
+
+    // Helper method to shut down a pool if the search owns it
+    private static void _shutdown(ForkJoinPool pool, boolean ownsPool) {
+        if (ownsPool && pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    // State of one search. Buckets are cyclic: a relaxed distance is at most the largest road
+    // weight past the current bucket, so that many buckets plus two are enough.
+    private class Run {
+        private final int[] offsets = snapshot.offsets();
+        private final int[] targets = snapshot.targets();
+        private final int[] weights = snapshot.weights();
+        private final AtomicIntegerArray distance;
+        private final IntList[] buckets;
+        private final int[] roundStamp;   // Last round a town was added to a frontier
+        private final int[] settledStamp; // Bucket (plus one) a town was last settled in
+        private int round;
+
+        Run(int townCount) {
+            distance = new AtomicIntegerArray(townCount);
+            for (int i = 0; i < townCount; i++) {
+                distance.set(i, GraphSnapshot.UNREACHABLE);
+            }
+            int maxWeight = 0;
+            for (int w : weights) {
+                maxWeight = Math.max(maxWeight, w);
+            }
+            buckets = new IntList[maxWeight / delta + 2];
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new IntList();
+            }
+            roundStamp = new int[townCount];
+            settledStamp = new int[townCount];
+        }
+
+        int[] solve(int source) {
+            distance.set(source, 0);
+            buckets[0].add(source);
+
+            IntList settled = new IntList();
+            int[] frontier = new int[16];
+            for (int current = _nextBucket(0); current >= 0; current = _nextBucket(current + 1)) {
+                IntList bucket = buckets[current % buckets.length];
+                settled.clear();
+
+                while (bucket.size > 0) {
+                    // Take the towns still in this bucket once each, then empty it for the next round
+                    round++;
+                    int count = 0;
+                    for (int i = 0; i < bucket.size; i++) {
+                        int v = bucket.values[i];
+                        if (roundStamp[v] != round && distance.get(v) / delta == current) {
+                            roundStamp[v] = round;
+                            if (count == frontier.length) {
+                                frontier = Arrays.copyOf(frontier, count * 2);
+                            }
+                            frontier[count++] = v;
+                            if (settledStamp[v] != current + 1) {
+                                settledStamp[v] = current + 1;
+                                settled.add(v);
+                            }
+                        }
+                    }
+                    bucket.clear();
+                    _relax(frontier, count, true);
+                }
+                _relax(settled.values, settled.size, false);
+            }
+
+            int[] result = new int[distance.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = distance.get(i);
+            }
+            return result;
+        }
+
+        // Finds the first non-empty bucket from the given one on, or -1 when all are empty
+        private int _nextBucket(int from) {
+            for (int b = from; b < from + buckets.length; b++) {
+                if (buckets[b % buckets.length].size > 0) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        // Relaxes the light or heavy roads of some towns, in parallel when there are enough of
+        // them, and files every town whose distance dropped into its bucket
+        private void _relax(int[] towns, int count, boolean light) {
+            int chunks = Math.min(threads * 4, (count + MIN_PARALLEL_TOWNS - 1) / MIN_PARALLEL_TOWNS);
+            IntList[] improved;
+            if (chunks <= 1 || pool == null) {
+                improved = new IntList[] { _relaxRange(towns, 0, count, light) };
+            } else {
+                IntList[] parts = new IntList[chunks];
+                pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c ->
+                        parts[c] = _relaxRange(towns, (int) ((long) count * c / chunks),
+                                (int) ((long) count * (c + 1) / chunks), light))).join();
+                improved = parts;
+            }
+            for (IntList part : improved) {
+                for (int i = 0; i < part.size; i++) {
+                    int v = part.values[i];
+                    buckets[(distance.get(v) / delta) % buckets.length].add(v);
+                }
+            }
+        }
+
+        // Relaxes the roads of towns[from..to) and returns the towns whose distance dropped
+        private IntList _relaxRange(int[] towns, int from, int to, boolean light) {
+            IntList improved = new IntList();
+            for (int i = from; i < to; i++) {
+                int u = towns[i];
+                int du = distance.get(u);
+                for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                    int w = weights[slot];
+                    if ((w <= delta) != light) {
+                        continue;
+                    }
+                    int v = targets[slot];
+                    int dv = du + w;
+                    for (int old = distance.get(v); dv < old; old = distance.get(v)) {
+                        if (distance.compareAndSet(v, old, dv)) {
+                            improved.add(v);
+                            break;
+                        }
+                    }
+                }
+            }
+            return improved;
+        }
+    }
+
+    // A growable array of ints
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package graphs;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Driver that measures how parallel delta-stepping scales with the number of
+ * threads on a synthetic grid-shaped road network. Every search computes the
+ * distances from one town to all towns; the sequential Dijkstra search of
+ * GraphSnapshot is timed as the baseline and every delta-stepping result is
+ * checked against it.
+ *
+ * Usage: java graphs.DeltaSteppingBenchmark [gridSide] [delta] [threads...]
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class DeltaSteppingBenchmark {
+
+    // Number of searches timed for each configuration, after one warm-up search
+    private static final int RUNS = 3;
+
+    /**
+     * Runs the benchmark and prints the results.
+     *
+     * @param args optional grid side length (default 500), delta (default the average
+     *             road weight) and thread counts (default 1 2 4 8 16)
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Town[] towns = new Town[side * side];
+        GraphSnapshot snapshot = RoutingBenchmark.grid(side, towns, new Random(42)).snapshot();
+        int delta = args.length > 1 ? Integer.parseInt(args[1]) : DeltaStepping.defaultDelta(snapshot);
+        int[] threadCounts = { 1, 2, 4, 8, 16 };
+        if (args.length > 2) {
+            threadCounts = Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray();
+        }
+
+        Town source = towns[towns.length / 2 + side / 2];
+        System.out.println("Grid " + side + "x" + side + ": " + snapshot.townCount() + " towns, " + snapshot.roadCount()
+                + " roads, delta " + delta + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        int[] expected = new int[snapshot.townCount()];
+        double dijkstraMillis = _time(() -> snapshot.dijkstraShortestPath(source));
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = snapshot.lastDistance(snapshot.townAt(i));
+        }
+
+        System.out.printf("%-20s %10s %12s %12s%n", "engine", "ms", "vs 1 thread", "vs Dijkstra");
+        System.out.printf("%-20s %10.1f %12s %12s%n", "Dijkstra", dijkstraMillis, "", "1.00x");
+
+        double oneThreadMillis = 0;
+        for (int threads : threadCounts) {
+            int[][] result = new int[1][];
+            double millis;
+            try (DeltaStepping search = new DeltaStepping(snapshot, delta, threads)) {
+                millis = _time(() -> result[0] = search.distancesFrom(source));
+            }
+            if (!Arrays.equals(expected, result[0])) {
+                throw new IllegalStateException("Delta-stepping with " + threads + " threads disagrees with Dijkstra");
+            }
+            if (oneThreadMillis == 0) {
+                oneThreadMillis = millis;
+            }
+            System.out.printf("%-20s %10.1f %11.2fx %11.2fx%n", "delta-stepping x" + threads, millis,
+                    oneThreadMillis / millis, dijkstraMillis / millis);
+        }
+    }
+
+    // Helper method to run a search once to warm up, then return its best time over RUNS runs
+    private static double _time(Runnable search) {
+        search.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            search.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
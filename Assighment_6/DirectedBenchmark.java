@@ -0,0 +1,96 @@
+package graphs;
+
+import java.util.Random;
+
+/**
+ * Driver that compares an undirected graph with directed graphs over the same
+ * synthetic grid-shaped road network: the memory of each snapshot and the average
+ * latency of point-to-point queries on the Graph, of Dijkstra on its snapshot and
+ * of the snapshot's bidirectional search over the forward and reverse layouts.
+ *
+ * The directed graphs hold the same roads, first all two-way with one weight
+ * (which shows the cost of the mode itself) and then mixed: one road in five is
+ * one-way and the others get their own weight for the way back.
+ *
+ * Usage: java graphs.DirectedBenchmark [gridSide] [queries]
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class DirectedBenchmark {
+
+    // Keeps query results alive so the JIT cannot drop the work being timed
+    private static long sink;
+
+    /**
+     * Runs the benchmark and prints the results.
+     *
+     * @param args optional grid side length (default 100) and number of queries (default 1000)
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        Town[] towns = new Town[side * side];
+        Graph undirected = RoutingBenchmark.grid(side, towns, new Random(42));
+        Graph twoWay = _directed(undirected, towns, null);
+        Graph mixed = _directed(undirected, towns, new Random(7));
+        System.out.println("Grid " + side + "x" + side + ": " + towns.length + " towns, " + undirected.edgeSet().size() + " roads");
+
+        System.out.printf("%-20s %14s %14s %14s %14s%n", "mode", "snapshot bytes", "graph us", "dijkstra us", "bidir us");
+        _report("undirected", undirected, towns, queries);
+        _report("directed (two-way)", twoWay, towns, queries);
+        _report("directed (mixed)", mixed, towns, queries);
+    }
+
+    // Helper method to copy the towns and roads of an undirected graph into a directed one.
+    // Without a random source every road stays two-way with one weight; with one, a road in
+    // five becomes one-way and the others get a reverse weight of up to twice their weight.
+    private static Graph _directed(Graph graph, Town[] towns, Random random) {
+        Graph directed = new Graph(true);
+        for (Town t : towns) {
+            directed.addVertex(t);
+        }
+        for (Road r : graph.edgeSet()) {
+            if (random == null) {
+                directed.addEdge(r.getSource(), r.getDestination(), r.getWeight(), r.getName());
+            } else {
+                int reverse = random.nextInt(5) == 0 ? Road.CLOSED : 1 + random.nextInt(2 * r.getWeight());
+                directed.addEdge(r.getSource(), r.getDestination(), r.getWeight(), reverse, r.getName());
+            }
+        }
+        return directed;
+    }
+
+    // Helper method to time the three query engines of one graph and print its row
+    private static void _report(String mode, Graph graph, Town[] towns, int queries) {
+        GraphSnapshot snapshot = graph.snapshot();
+        double graphMicros = _time(queries, towns, (a, b) -> graph.route(a, b).getDistance());
+        double dijkstraMicros = _time(queries, towns, (a, b) -> snapshot.route(a, b).getDistance());
+        double bidirectionalMicros = _time(queries, towns, (a, b) -> snapshot.bidirectionalRoute(a, b).getDistance());
+        System.out.printf("%-20s %14d %14.1f %14.1f %14.1f%n", mode, snapshot.memoryBytes(), graphMicros, dijkstraMicros,
+                bidirectionalMicros);
+    }
+
+    // Helper method to run a query engine over the same pseudo-random town pairs, first to warm
+    // up and then timed, and return the average microseconds per query
+    private static double _time(int queries, Town[] towns, Query query) {
+        Random random = new Random(7);
+        for (int i = 0; i < Math.min(queries, 100); i++) {
+            sink += query.run(towns[random.nextInt(towns.length)], towns[random.nextInt(towns.length)]);
+        }
+
+        random = new Random(7);
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            sink += query.run(towns[random.nextInt(towns.length)], towns[random.nextInt(towns.length)]);
+        }
+        return (System.nanoTime() - start) / 1e3 / queries;
+    }
+
+    // A point-to-point query returning the distance found
+    private interface Query {
+        int run(Town source, Town destination);
+    }
+}
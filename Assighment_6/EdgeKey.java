@@ -0,0 +1,123 @@
+package graphs;
+
+/**
+ * An unordered pair of town ids naming the road between two towns. EdgeKey.of(a, b)
+ * equals EdgeKey.of(b, a), matching Road.equals, which ignores direction.
+ *
+ * The pair also packs into a single long (smaller id in the high half), which is
+ * how GraphSnapshot keys its road index without creating key objects.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public final class EdgeKey {
+
+    private final int low;   // The smaller town id
+    private final int high;  // The larger town id
+
+    private EdgeKey(int low, int high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Gets the key of the road between two towns.
+     *
+     * @param town1 The id of one town.
+     * @param town2 The id of the other town.
+     * @return The key; the order of the ids does not matter.
+     */
+    public static EdgeKey of(int town1, int town2) {
+        return town1 <= town2 ? new EdgeKey(town1, town2) : new EdgeKey(town2, town1);
+    }
+
+    /**
+     * Packs the key of the road between two towns into a long.
+     *
+     * @param town1 The id of one town.
+     * @param town2 The id of the other town.
+     * @return The packed key; the order of the ids does not matter.
+     */
+    static long pack(int town1, int town2) {
+        int low = Math.min(town1, town2);
+        int high = Math.max(town1, town2);
+        return ((long) low << 32) | (high & 0xffffffffL);
+    }
+
+    /**
+     * Spreads the bits of a packed key for use as a hash table index.
+     *
+     * @param packed A packed key.
+     * @return A well-mixed hash of the key.
+     */
+    static int hash(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gets the smaller of the two town ids.
+     *
+     * @return The smaller id.
+     */
+    public int getLow() {
+        return low;
+    }
+
+    /**
+     * Gets the larger of the two town ids.
+     *
+     * @return The larger id.
+     */
+    public int getHigh() {
+        return high;
+    }
+
+    /**
+     * Packs this key into a long.
+     *
+     * @return The packed key.
+     */
+    public long toLong() {
+        return pack(low, high);
+    }
+
+    /**
+     * Computes a hash code for the pair.
+     *
+     * @return A hash code for the key.
+     */
+    @Override
+    public int hashCode() {
+        return hash(toLong());
+    }
+
+    /**
+     * Checks if another object is the key of the same pair of towns.
+     *
+     * @param obj The object to compare with.
+     * @return true if obj is an EdgeKey with the same two ids, false otherwise.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EdgeKey)) {
+            return false;
+        }
+        EdgeKey other = (EdgeKey) obj;
+        return low == other.low && high == other.high;
+    }
+
+    /**
+     * Returns the pair as "{low, high}".
+     *
+     * @return A string representation of the key.
+     */
+    @Override
+    public String toString() {
+        return "{" + low + ", " + high + "}";
+    }
+}
@@ -1,17 +1,38 @@
 package graphs;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class represents a graph with towns and roads and implements the GraphInterface.
  * 
+ * The graph is safe to share between threads: searches keep their working state
+ * in per-thread tables, and a read/write lock lets any number of searches and
+ * lookups run together while changes wait for exclusive access.
+ *
+ * Towns are interned in a TownRegistry, which gives each one a dense int id; the
+ * searches index their distance and predecessor tables by that id.
+ *
+ * A graph is undirected by default: every road is travelled both ways at its
+ * weight. A directed graph also accepts one-way roads and roads with a different
+ * weight in each direction, and its searches only take a road in a direction it
+ * is open, at the weight for that direction. Each road is still stored once.
+ * Spanning trees and connected components ignore direction.
+ * 
  * @author Moises Merlos
  * @date 12/03/2023
  * 
@@ -22,44 +43,268 @@ public class Graph implements GraphInterface<Town, Road> {
     private Set<Town> town;
     private Set<Road> road;
 
-    // Sets and maps for algorithmic calculations
-    private Set<Town> known;
-    private Set<Town> unknown;
-    private Map<Town, Town> past;
-    private Map<Town, Integer> size;
+    // Lightest road touching each town, keyed by the town at the other end
+    private Map<Town, Map<Town, Road>> adjacency;
+
+    // All roads of each pair of towns joined by more than one road, lightest first, keyed
+    // by identity of the pair's lightest road (the one in the adjacency map)
+    private Map<Road, List<Road>> parallel;
+
+    // Towns keyed by their exact name, and every town sharing each lower-case name in the
+    // order they were added; case-insensitive lookups give the first
+    private Map<String, Town> names;
+    private Map<String, List<Town>> foldedNames;
+
+    // Canonical instance and dense id of every town the graph has seen
+    private final TownRegistry registry;
+
+    // Whether searches follow the direction of roads
+    private final boolean directed;
+
+    // Readers share the read lock; changes take the write lock
+    private final ReadWriteLock lock;
+
+    // Incremented on every change so that cached routing results can tell they are stale
+    private volatile long version;
+
+    // Read-only copies handed out by vertexSet, edgeSet and snapshot; null until asked for after a change
+    private volatile Set<Town> townView;
+    private volatile Set<Road> roadView;
+    private volatile GraphSnapshot snapshotView;
+
+    // Result of the last dijkstraShortestPath call made by each thread
+    private final ThreadLocal<ShortestPathTree> lastTree;
+
+    // Search tables of each thread, kept between queries so their arrays are reused;
+    // bidirectional searches use both, the others only the first
+    private final ThreadLocal<Search[]> searches;
 
     /**
-     * Constructs a new Graph with empty sets for towns, roads, known, and unknown sets,
-     * and empty maps for past and size.
+     * Constructs a new Graph with empty sets for towns and roads and an empty adjacency map.
      */
     public Graph() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new, empty Graph that is directed or undirected.
+     *
+     * @param directed true if searches should follow one-way roads and reverse weights.
+     */
+    public Graph(boolean directed) {
+        this.directed = directed;
         town = new HashSet<>();
         road = new HashSet<>();
+        adjacency = new HashMap<>();
+        parallel = new IdentityHashMap<>();
+        names = new HashMap<>();
+        foldedNames = new HashMap<>();
+
+        registry = new TownRegistry();
 
-        known = new HashSet<>();
-        unknown = new HashSet<>();
-        size = new HashMap<>();
-        past = new HashMap<>();
+        lock = new ReentrantReadWriteLock();
+        lastTree = new ThreadLocal<>();
+        searches = ThreadLocal.withInitial(() -> new Search[] { new Search(), new Search() });
+    }
+
+    /**
+     * Checks if searches in this graph follow the direction of roads.
+     *
+     * @return true for a directed graph, false for an undirected one.
+     */
+    public boolean isDirected() {
+        return directed;
     }
 
     /**
-     * Gets the edge (road) between two towns.
+     * Gets the registry that interns the towns of this graph and numbers them.
+     *
+     * @return The town registry.
+     */
+    public TownRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Gets the lock that guards changes to this graph. Callers that combine several
+     * calls into one change (check, then add) hold it around the whole sequence.
+     *
+     * @return The write lock of this graph.
+     */
+    Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * Gets the version of this graph. The version changes whenever a town or road is
+     * added or removed, so results computed at an older version are out of date.
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the edge (road) between two towns. When several roads join them, this is
+     * the lightest one, which is the only one routing looks at.
      *
      * @param sourceVertex      The source town.
      * @param destinationVertex The destination town.
-     * @return The road between the source and destination towns.
+     * @return The lightest road between the source and destination towns.
      */
     @Override
     public Road getEdge(Town sourceVertex, Town destinationVertex) {
-        // Find and return the road between two towns
-        return road.stream()
-                .filter(road -> road.contains(sourceVertex) && road.contains(destinationVertex))
-                .findFirst()
-                .orElse(null);
+        // Look up the road between two towns in the source town's adjacency map
+        lock.readLock().lock();
+        try {
+            return _edge(sourceVertex, destinationVertex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method to look up the lightest road between two towns; the caller holds a lock
+    private Road _edge(Town sourceVertex, Town destinationVertex) {
+        Map<Town, Road> neighbors = adjacency.get(sourceVertex);
+        return neighbors == null ? null : neighbors.get(destinationVertex);
+    }
+
+    /**
+     * Gets the road with the given name between two towns.
+     *
+     * @param sourceVertex      One town of the road.
+     * @param destinationVertex The other town of the road.
+     * @param description       The description (name) of the road.
+     * @return The road, or null if no road with that name joins the towns.
+     */
+    public Road getEdge(Town sourceVertex, Town destinationVertex, String description) {
+        lock.readLock().lock();
+        try {
+            Road lightest = _edge(sourceVertex, destinationVertex);
+            if (lightest == null) {
+                return null;
+            }
+            for (Road r : _roads(lightest)) {
+                if (Objects.equals(r.getName(), description)) {
+                    return r;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets every road between two towns.
+     *
+     * @param sourceVertex      One town of the roads.
+     * @param destinationVertex The other town of the roads.
+     * @return The roads, lightest first; empty if the towns are not joined.
+     */
+    public List<Road> getEdges(Town sourceVertex, Town destinationVertex) {
+        lock.readLock().lock();
+        try {
+            Road lightest = _edge(sourceVertex, destinationVertex);
+            return lightest == null ? new ArrayList<>() : new ArrayList<>(_roads(lightest));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method to get all the roads of a pair of towns from the pair's lightest road,
+    // lightest first. The list is the one kept in the parallel map, or a new one-road list
+    // for a pair with a single road; after changing it, call _setRoads. The caller holds a lock.
+    private List<Road> _roads(Road lightest) {
+        List<Road> roads = parallel.get(lightest);
+        if (roads == null) {
+            roads = new ArrayList<>(2);
+            roads.add(lightest);
+        }
+        return roads;
+    }
+
+    // Helper method to store the roads of a pair of towns after a change: the first road of the
+    // list goes in the adjacency map and the whole list is kept if it has more than one road.
+    // previous is the pair's lightest road before the change. The caller holds the write lock.
+    private void _setRoads(Road previous, List<Road> roads) {
+        Town a = previous.getSource();
+        Town b = previous.getDestination();
+        parallel.remove(previous);
+        if (roads.isEmpty()) {
+            _unlink(a, b);
+            _unlink(b, a);
+            return;
+        }
+
+        Road lightest = roads.get(0);
+        if (lightest != previous) {
+            _link(a, b, lightest);
+            _link(b, a, lightest);
+        }
+        if (roads.size() > 1) {
+            parallel.put(lightest, roads);
+        }
+    }
+
+    // Helper method to pick the road a search takes from a town to a neighbor, given the
+    // lightest road of the pair: in an undirected graph the lightest road itself, in a directed
+    // graph the road that is cheapest to take from that town, or null if every road of the pair
+    // is one-way toward it. The caller holds a lock.
+    private Road _exit(Road lightest, Town from) {
+        if (!directed) {
+            return lightest;
+        }
+        List<Road> roads = parallel.get(lightest);
+        if (roads == null) {
+            return lightest.getWeightFrom(from) == Road.CLOSED ? null : lightest;
+        }
+        Road best = null;
+        int bestWeight = Integer.MAX_VALUE;
+        for (Road r : roads) {
+            int w = r.getWeightFrom(from);
+            if (w != Road.CLOSED && w < bestWeight) {
+                best = r;
+                bestWeight = w;
+            }
+        }
+        return best;
+    }
+
+    // Helper method to get the weight of taking a road from one of its towns
+    private int _weight(Road r, Town from) {
+        return directed ? r.getWeightFrom(from) : r.getWeight();
+    }
+
+    // Helper method to add a road between two towns already in the graph. A road with the same
+    // name between the same towns is replaced; any other road of the pair is kept, and the new
+    // road is placed after the roads that are not heavier. The caller holds the write lock.
+    private void _addRoad(Road r) {
+        road.remove(r);
+        road.add(r);
+
+        Road lightest = _edge(r.getSource(), r.getDestination());
+        if (lightest == null) {
+            _link(r.getSource(), r.getDestination(), r);
+            _link(r.getDestination(), r.getSource(), r);
+            return;
+        }
+
+        List<Road> roads = _roads(lightest);
+        roads.remove(r);
+        int at = 0;
+        while (at < roads.size() && roads.get(at).getWeight() <= r.getWeight()) {
+            at++;
+        }
+        roads.add(at, r);
+        _setRoads(lightest, roads);
     }
 
     /**
-     * Adds a new road to the graph.
+     * Adds a new road to the graph. A road with the same name already connecting the
+     * same two towns is replaced by the new one; roads with other names are kept, so
+     * two towns can be joined by several roads.
      *
      * @param sourceVertex      The source town.
      * @param destinationVertex The destination town.
@@ -69,12 +314,129 @@ public class Graph implements GraphInterface<Town, Road> {
      */
     @Override
     public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, String description) {
-        // Add a new road to the graph
-        Road newRoad = new Road(sourceVertex, destinationVertex, weight, description);
-        road.add(newRoad);
+        // Add a new road to the graph and index it under both of its towns
+        Road newRoad;
+        lock.writeLock().lock();
+        try {
+            Town source = _canonical(sourceVertex);
+            Town destination = _canonical(destinationVertex);
+            newRoad = new Road(source, destination, weight, description);
+            _addRoad(newRoad);
+            _changed();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return newRoad;
+    }
+
+    /**
+     * Adds a road with a different weight in each direction, or a one-way road, to a
+     * directed graph. As with addEdge, a road with the same name between the same two
+     * towns is replaced.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param weight            The weight from the source to the destination.
+     * @param reverseWeight     The weight from the destination to the source, or Road.CLOSED for a one-way road.
+     * @param description       The description (name) of the road.
+     * @return The newly added road.
+     * @throws IllegalStateException if the graph is undirected.
+     */
+    public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, int reverseWeight, String description) {
+        if (!directed) {
+            throw new IllegalStateException("Directed roads need a directed graph");
+        }
+        Road newRoad;
+        lock.writeLock().lock();
+        try {
+            Town source = _canonical(sourceVertex);
+            Town destination = _canonical(destinationVertex);
+            newRoad = new Road(source, destination, weight, reverseWeight, description);
+            _addRoad(newRoad);
+            _changed();
+        } finally {
+            lock.writeLock().unlock();
+        }
         return newRoad;
     }
 
+    /**
+     * Adds many roads and their towns while holding the write lock once. A road is skipped
+     * when a road with the same name already connects its two towns, either before the call
+     * or by an earlier road in the list; its towns are still added.
+     *
+     * @param newRoads The roads to add, in order.
+     * @param added    Receives, for each road, whether it was added.
+     * @return The number of towns that were not in the graph before.
+     */
+    int addAll(List<Road> newRoads, boolean[] added) {
+        lock.writeLock().lock();
+        try {
+            int townsAdded = 0;
+            for (int i = 0; i < newRoads.size(); i++) {
+                Road r = newRoads.get(i);
+                Town source = _canonical(r.getSource());
+                Town destination = _canonical(r.getDestination());
+                if (source != r.getSource()) {
+                    r.setSource(source);
+                }
+                if (destination != r.getDestination()) {
+                    r.setDestination(destination);
+                }
+                if (town.add(r.getSource())) {
+                    _index(r.getSource());
+                    townsAdded++;
+                }
+                if (town.add(r.getDestination())) {
+                    _index(r.getDestination());
+                    townsAdded++;
+                }
+                added[i] = !road.contains(r);
+                if (added[i]) {
+                    _addRoad(r);
+                }
+            }
+            _changed();
+            return townsAdded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Helper method to find the instance of a town the graph works with: the town in the graph
+    // with that name, or else the given town, registered as the canonical one for its name.
+    // The caller holds the write lock.
+    private Town _canonical(Town v) {
+        Town current = names.get(v.getName());
+        return current != null ? current : registry.replace(v);
+    }
+
+    // Helper method to drop the read-only views of the old version and move to a new one; the
+    // caller holds the write lock. The views are dropped first, so a reader that sees the new
+    // version and then asks for a view never gets the old one from the lock-free fast path.
+    private void _changed() {
+        townView = null;
+        roadView = null;
+        snapshotView = null;
+        version++;
+    }
+
+    // Helper method to record a road in the adjacency map of one of its towns
+    private void _link(Town from, Town to, Road r) {
+        adjacency.computeIfAbsent(from, t -> new HashMap<>()).put(to, r);
+    }
+
+    // Helper method to drop a road from the adjacency map of one of its towns
+    private void _unlink(Town from, Town to) {
+        Map<Town, Road> neighbors = adjacency.get(from);
+        if (neighbors != null) {
+            neighbors.remove(to);
+            if (neighbors.isEmpty()) {
+                adjacency.remove(from);
+            }
+        }
+    }
+
     /**
      * Adds a new town to the graph.
      *
@@ -84,7 +446,84 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public boolean addVertex(Town v) {
         // Add a new town to the graph
-        return town.add(v);
+        lock.writeLock().lock();
+        try {
+            if (town.contains(v)) {
+                return false;
+            }
+            Town t = registry.replace(v);
+            town.add(t);
+            _index(t);
+            _changed();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the town with the given name.
+     *
+     * @param name The name of the town.
+     * @return The town in the graph with exactly that name, or null if there is none.
+     */
+    Town getVertex(String name) {
+        lock.readLock().lock();
+        try {
+            return names.get(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a town by name, ignoring case. A town whose name matches exactly is
+     * preferred over one that only differs in case.
+     *
+     * @param name The name of the town.
+     * @return The matching town in the graph, or null if there is none.
+     */
+    Town getVertexIgnoreCase(String name) {
+        if (name == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Town exact = names.get(name);
+            if (exact != null) {
+                return exact;
+            }
+            List<Town> same = foldedNames.get(_fold(name));
+            return same == null ? null : same.get(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method to add a town to the name indexes; the caller holds the write lock
+    private void _index(Town v) {
+        names.put(v.getName(), v);
+        foldedNames.computeIfAbsent(_fold(v.getName()), k -> new ArrayList<>(1)).add(v);
+    }
+
+    // Helper method to drop a town from the name indexes. If other towns share its lower-case
+    // name, the next one added takes over case-insensitive lookups; only the towns sharing
+    // the name are looked at, so removal does not depend on the size of the graph.
+    private void _unindex(Town v) {
+        if (v == null) {
+            return;
+        }
+        names.remove(v.getName());
+        String folded = _fold(v.getName());
+        List<Town> same = foldedNames.get(folded);
+        if (same != null && same.remove(v) && same.isEmpty()) {
+            foldedNames.remove(folded);
+        }
+    }
+
+    // Helper method to give the key used for case-insensitive lookups
+    private static String _fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -97,7 +536,7 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public boolean containsEdge(Town sourceVertex, Town destinationVertex) {
         // Check if there is an edge (road) between two towns
-        return road.stream().anyMatch(road -> road.contains(sourceVertex) && road.contains(destinationVertex));
+        return getEdge(sourceVertex, destinationVertex) != null;
     }
 
     /**
@@ -109,18 +548,36 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public boolean containsVertex(Town v) {
         // Check if the graph contains a specific town
-        return town.contains(v);
+        lock.readLock().lock();
+        try {
+            return town.contains(v);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * Returns a set containing all roads in the graph.
+     * Returns a read-only set containing all roads in the graph. The set is a copy taken
+     * at the current version and is shared by every caller until the graph changes, so
+     * repeated calls do not copy the roads again.
      *
-     * @return A set of all roads in the graph.
+     * @return An unmodifiable set of all roads in the graph.
      */
     @Override
     public Set<Road> edgeSet() {
-        // Return a new set containing all roads in the graph
-        return new HashSet<>(road);
+        Set<Road> view = roadView;
+        if (view != null) {
+            return view;
+        }
+        lock.readLock().lock();
+        try {
+            if (roadView == null) {
+                roadView = Collections.unmodifiableSet(new HashSet<>(road));
+            }
+            return roadView;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -132,7 +589,25 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public Set<Road> edgesOf(Town vertex) {
         // Return a set containing all roads connected to a specific town
-        return road.stream().filter(road -> road.contains(vertex)).collect(Collectors.toSet());
+        lock.readLock().lock();
+        try {
+            Map<Town, Road> neighbors = adjacency.get(vertex);
+            if (neighbors == null) {
+                return new HashSet<>();
+            }
+            Set<Road> roads = new HashSet<>(neighbors.values());
+            if (!parallel.isEmpty()) {
+                for (Road lightest : neighbors.values()) {
+                    List<Road> others = parallel.get(lightest);
+                    if (others != null) {
+                        roads.addAll(others);
+                    }
+                }
+            }
+            return roads;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -147,22 +622,46 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public Road removeEdge(Town sourceVertex, Town destinationVertex, int weight, String description) {
         // Remove a specific road from the graph
-        Road removedRoad = road.stream()
-                .filter(road -> road.contains(sourceVertex) && road.contains(destinationVertex)
-                        && road.getWeight() == weight && road.getName().equals(description))
-                .findFirst()
-                .orElse(null);
+        lock.writeLock().lock();
+        try {
+            Road lightest = _edge(sourceVertex, destinationVertex);
+            if (lightest == null) {
+                return null;
+            }
 
-        if (removedRoad != null) {
-            road.remove(removedRoad);
+            List<Road> roads = _roads(lightest);
+            for (int i = 0; i < roads.size(); i++) {
+                Road removedRoad = roads.get(i);
+                if (removedRoad.getWeight() == weight && removedRoad.getName().equals(description)) {
+                    roads.remove(i);
+                    road.remove(removedRoad);
+                    _setRoads(lightest, roads);
+                    _changed();
+                    return removedRoad;
+                }
+            }
+            return null;
+        } finally {
+            lock.writeLock().unlock();
         }
-
-        return removedRoad;
     }
 
     // Helper method to remove all roads connected to a specific town
     private void _removeConnectedRoads(Town v) {
-        edgesOf(v).forEach(road::remove);
+        Map<Town, Road> neighbors = adjacency.remove(v);
+        if (neighbors == null) {
+            return;
+        }
+
+        for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+            List<Road> roads = parallel.remove(entry.getValue());
+            if (roads == null) {
+                road.remove(entry.getValue());
+            } else {
+                road.removeAll(roads);
+            }
+            _unlink(entry.getKey(), v);
+        }
     }
 
     /**
@@ -174,24 +673,207 @@ public class Graph implements GraphInterface<Town, Road> {
     @Override
     public boolean removeVertex(Town v) {
         // Remove a specific town and all connected roads from the graph
-        town.remove(v);
-        _removeConnectedRoads(v);
+        lock.writeLock().lock();
+        try {
+            // A town that is not in the graph has no roads, and removing it changes nothing
+            if (town.remove(v)) {
+                _unindex(v);
+                _removeConnectedRoads(v);
+                _changed();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
         return true;
     }
 
     /**
-     * Returns a set containing all towns in the graph.
+     * Returns a read-only set containing all towns in the graph. The set is a copy taken
+     * at the current version and is shared by every caller until the graph changes.
      *
-     * @return A set of all towns in the graph.
+     * @return An unmodifiable set of all towns in the graph.
      */
     @Override
     public Set<Town> vertexSet() {
-        // Return a new set containing all towns in the graph
-        return new HashSet<>(town);
+        Set<Town> view = townView;
+        if (view != null) {
+            return view;
+        }
+        lock.readLock().lock();
+        try {
+            if (townView == null) {
+                townView = Collections.unmodifiableSet(new HashSet<>(town));
+            }
+            return townView;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Freezes the current towns and roads into an immutable, compact snapshot for
+     * read-heavy routing. Later changes to this graph are not reflected in it. The
+     * snapshot is shared by every caller until the graph changes.
+     *
+     * @return A snapshot of this graph.
+     */
+    public GraphSnapshot snapshot() {
+        GraphSnapshot view = snapshotView;
+        if (view != null) {
+            return view;
+        }
+        lock.readLock().lock();
+        try {
+            if (snapshotView == null) {
+                snapshotView = new GraphSnapshot(town, road, version, directed);
+            }
+            return snapshotView;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the shortest distance from a town to every town with parallel delta-stepping,
+     * run on the snapshot of the current version. The distances are the same as those of
+     * dijkstraShortestPath; the work of each bucket is shared between the threads.
+     * The threads are started for this one call; for repeated queries keep a
+     * DeltaStepping instead.
+     *
+     * @param sourceVertex The source town.
+     * @param delta        The bucket width; roads up to this weight are relaxed in rounds.
+     * @param threads      The number of worker threads.
+     * @return The distances indexed by snapshot().idOf; unreachable towns hold GraphSnapshot.UNREACHABLE.
+     */
+    public int[] deltaSteppingDistances(Town sourceVertex, int delta, int threads) {
+        try (DeltaStepping search = new DeltaStepping(snapshot(), delta, threads)) {
+            return search.distancesFrom(sourceVertex);
+        }
+    }
+
+    /**
+     * Gets the connected components of the current version, labelled on its snapshot.
+     * They are labelled once per version, so after removeVertex or removeEdge the
+     * next call shows the regions that were split off.
+     *
+     * @return The connected components.
+     */
+    public ConnectedComponents connectedComponents() {
+        return snapshot().connectedComponents();
+    }
+
+    /**
+     * Checks if a path exists between two towns, without searching.
+     *
+     * @param town1 The first town.
+     * @param town2 The second town.
+     * @return true if both towns are in the graph and connected, false otherwise.
+     */
+    public boolean isConnected(Town town1, Town town2) {
+        return connectedComponents().isConnected(town1, town2);
+    }
+
+    /**
+     * Finds a minimum spanning tree with Kruskal's algorithm: roads are taken in their
+     * natural (weight) order and kept when they join two towns that a union-find does
+     * not yet hold in the same set. A disconnected graph gets a tree for each component.
+     *
+     * @return The roads of the tree, lightest first.
+     */
+    public List<Road> minimumSpanningTree() {
+        lock.readLock().lock();
+        try {
+            GraphSnapshot view = snapshot();
+            List<Road> sorted = new ArrayList<>(road);
+            Collections.sort(sorted);
+
+            UnionFind sets = new UnionFind(view.townCount());
+            List<Road> tree = new ArrayList<>();
+            for (Road r : sorted) {
+                if (tree.size() == view.townCount() - 1) {
+                    break;
+                }
+                if (sets.union(view.idOf(r.getSource()), view.idOf(r.getDestination()))) {
+                    tree.add(r);
+                }
+            }
+            return tree;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a minimum spanning tree with Prim's algorithm: the tree grows from one town,
+     * always adding the lightest road that leaves it, taken from a heap of roads. A
+     * disconnected graph gets a tree for each component. The total weight is the same
+     * as for minimumSpanningTree, although roads of equal weight may be chosen differently.
+     *
+     * @return The roads of the tree, in the order they were added.
+     */
+    public List<Road> primMinimumSpanningTree() {
+        lock.readLock().lock();
+        try {
+            Set<Town> reached = new HashSet<>();
+            PriorityQueue<Road> queue = new PriorityQueue<>();
+            List<Road> tree = new ArrayList<>();
+
+            for (Town start : adjacency.keySet()) {
+                if (!reached.add(start)) {
+                    continue;
+                }
+                queue.addAll(adjacency.get(start).values());
+                while (!queue.isEmpty()) {
+                    Road r = queue.poll();
+                    Town next = reached.contains(r.getSource()) ? r.getDestination() : r.getSource();
+                    if (!reached.add(next)) {
+                        continue;
+                    }
+                    tree.add(r);
+                    for (Road out : adjacency.get(next).values()) {
+                        if (!reached.contains(out.getSource()) || !reached.contains(out.getDestination())) {
+                            queue.add(out);
+                        }
+                    }
+                }
+            }
+            return tree;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * Finds the shortest path between two towns using Dijkstra's algorithm.
+     * Finds up to k shortest loop-free paths between two towns with Yen's algorithm,
+     * run on the snapshot of the current version.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param k                 The number of paths wanted.
+     * @return The paths, shortest first, each as shortestPath would return it.
+     */
+    public ArrayList<ArrayList<String>> kShortestPaths(Town sourceVertex, Town destinationVertex, int k) {
+        return snapshot().kShortestPaths(sourceVertex, destinationVertex, k);
+    }
+
+    /**
+     * Finds up to k shortest loop-free routes between two towns with Yen's algorithm,
+     * run on the snapshot of the current version.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param k                 The number of routes wanted.
+     * @return The routes, shortest first; fewer than k if there are no more loop-free routes.
+     */
+    public List<Route> kShortestRoutes(Town sourceVertex, Town destinationVertex, int k) {
+        return snapshot().kShortestRoutes(sourceVertex, destinationVertex, k);
+    }
+
+    /**
+     * Finds the shortest path between two towns using a bidirectional Dijkstra search:
+     * one search grows from each town and the search stops once no undiscovered path
+     * can be shorter than the best meeting point found so far. Towns in different
+     * components are answered from the component labels without searching.
      *
      * @param sourceVertex      The source town.
      * @param destinationVertex The destination town.
@@ -199,86 +881,666 @@ public class Graph implements GraphInterface<Town, Road> {
      */
     @Override
     public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex) {
-        // Find the shortest path between two towns using Dijkstra's algorithm
-        dijkstraShortestPath(sourceVertex);
+        return route(sourceVertex, destinationVertex).toSteps();
+    }
+
+    /**
+     * Finds the shortest route between two towns with the same search as shortestPath,
+     * without formatting its steps.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The route; not found if either town is null or the towns are not connected.
+     */
+    public Route route(Town sourceVertex, Town destinationVertex) {
+        // Find the shortest path between two towns using Dijkstra's algorithm from both ends
+        lock.readLock().lock();
+        try {
+            return _bidirectional(sourceVertex, destinationVertex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method running Dijkstra's algorithm from both towns at once. The side whose queue
+    // has the smaller head is expanded next. Every relaxed town already reached by the other side
+    // is a candidate meeting point; the search stops when the two queue heads together are no
+    // shorter than the best candidate. Both sides use the same adjacency; in a directed graph the
+    // backward side takes each road in the direction that leads into the town it expands.
+    // The caller holds a lock.
+    private Route _bidirectional(Town sourceVertex, Town destinationVertex) {
+        if (sourceVertex == null || destinationVertex == null) {
+            return Route.notFound();
+        }
+        if (sourceVertex.equals(destinationVertex)) {
+            return new Route(new Town[] { sourceVertex }, new Road[0], 0);
+        }
+        // Towns in different components have no path; skip the searches that would settle both
+        // regions. The components are only consulted if this version already has them, since
+        // building a snapshot after every change would cost more than the search it saves.
+        GraphSnapshot view = snapshotView;
+        ConnectedComponents components = view == null ? null : view.labelledComponents();
+        if (components != null && !components.isConnected(sourceVertex, destinationVertex)) {
+            return Route.notFound();
+        }
+
+        int n = registry.size();
+        int source = _id(sourceVertex, n);
+        int destination = _id(destinationVertex, n);
+        if (source < 0 || destination < 0) {
+            return Route.notFound();
+        }
+
+        Search[] pair = searches.get();
+        Search forward = pair[0];
+        Search backward = pair[1];
+        forward.reset(n);
+        backward.reset(n);
+        forward.reach(source, 0, -1, null);
+        forward.push(source, 0);
+        backward.reach(destination, 0, -1, null);
+        backward.push(destination, 0);
+
+        int meeting = -1;
+        long best = Long.MAX_VALUE;
+
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if ((long) forward.heap.peekKey() + backward.heap.peekKey() >= best) {
+                break;
+            }
+
+            boolean forwardTurn = forward.heap.peekKey() <= backward.heap.peekKey();
+            Search side = forwardTurn ? forward : backward;
+            Search other = forwardTurn ? backward : forward;
+
+            int u = side.poll();
+            side.settle(u);
+
+            Town town = registry.townAt(u);
+            Map<Town, Road> neighbors = adjacency.get(town);
+            if (neighbors == null) {
+                continue;
+            }
+
+            int du = side.distance[u];
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                int v = registry.idOf(entry.getKey());
+                if (side.isSettled(v)) {
+                    continue;
+                }
+
+                // The backward search walks roads against their direction, into u
+                Town from = forwardTurn ? town : entry.getKey();
+                Road r = _exit(entry.getValue(), from);
+                if (r == null) {
+                    continue;
+                }
+                side.relaxations++;
+                int w = _weight(r, from);
+                int dv = du + w;
+                if (!side.isReached(v) || dv < side.distance[v]) {
+                    side.reach(v, dv, u, r);
+                    side.push(v, dv);
+                } else if (forwardTurn && side.ties(v, dv, u, w)) {
+                    side.reach(v, dv, u, r);
+                }
+                if (other.isReached(v) && (long) side.distance[v] + other.distance[v] < best) {
+                    best = (long) side.distance[v] + other.distance[v];
+                    meeting = v;
+                }
+            }
+        }
 
-        ArrayList<String> path = new ArrayList<>();
-        Town pastTown = destinationVertex;
+        if (meeting < 0) {
+            return Route.notFound();
+        }
 
-        while (pastTown != null) {
-            Town newTown = pastTown;
-            pastTown = past.get(pastTown);
-            Road roadPath = getEdge(newTown, pastTown);
+        // The meeting town fixes the length, but when routes tie the two halves need not join
+        // into the route a one-sided search picks. Carry the forward side on to the destination
+        // instead, entering only towns that can still lie on a route of that length: towns the
+        // backward side settled are exactly their distance from the destination, and the rest
+        // are at least as far as its queue head. Besides the towns of the tied routes few pass.
+        long beyond = backward.heap.isEmpty() ? Long.MAX_VALUE : backward.heap.peekKey();
+        while (!forward.isSettled(destination) && !forward.heap.isEmpty()) {
+            int u = forward.poll();
+            forward.settle(u);
 
-            if (pastTown != null) {
-                path.add(pastTown.getName() + " via " + roadPath.getName() + " to " + newTown.getName() + " " + roadPath.getWeight() + " mi");
+            Town town = registry.townAt(u);
+            Map<Town, Road> neighbors = adjacency.get(town);
+            if (neighbors == null) {
+                continue;
+            }
+
+            int du = forward.distance[u];
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                int v = registry.idOf(entry.getKey());
+                if (forward.isSettled(v)) {
+                    continue;
+                }
+
+                Road r = _exit(entry.getValue(), town);
+                if (r == null) {
+                    continue;
+                }
+                forward.relaxations++;
+                int w = _weight(r, town);
+                int dv = du + w;
+                long left = backward.isSettled(v) ? backward.distance[v] : beyond;
+                if (left > best - dv) {
+                    continue;
+                }
+                if (!forward.isReached(v) || dv < forward.distance[v]) {
+                    forward.reach(v, dv, u, r);
+                    forward.push(v, dv);
+                } else if (forward.ties(v, dv, u, w)) {
+                    forward.reach(v, dv, u, r);
+                }
             }
         }
+        return _collect(forward, destination);
+    }
 
-        Collections.reverse(path);
-        return path;
+    // Helper method to find the id of a town, or -1 if it has none below n (the registry
+    // size the search tables were set up for)
+    private int _id(Town t, int n) {
+        int id = registry.idOf(t);
+        return id < n ? id : -1;
     }
 
     /**
      * Applies Dijkstra's algorithm to find the shortest paths from a source town to all other towns.
+     * The result is kept for the calling thread only.
      *
      * @param sourceVertex The source town.
      */
     @Override
     public void dijkstraShortestPath(Town sourceVertex) {
-        // Implement Dijkstra's algorithm to find the shortest paths from a source town to all other towns
-        for (Town town : town) {
-            size.put(town, Integer.MAX_VALUE);
-            past.put(town, null);
-            unknown.add(town);
+        lastTree.set(_search(sourceVertex, null));
+    }
+
+    /**
+     * Gets the shortest-path tree built by the calling thread's last dijkstraShortestPath call.
+     *
+     * @return The last shortest-path tree, or null if this thread has not run one.
+     */
+    public ShortestPathTree lastShortestPathTree() {
+        return lastTree.get();
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a source town and returns the resulting tree of
+     * shortest paths to every reachable town.
+     *
+     * @param sourceVertex The source town.
+     * @return The shortest-path tree rooted at the source town.
+     */
+    public ShortestPathTree shortestPathTree(Town sourceVertex) {
+        return _search(sourceVertex, null);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a source town until every given target town has been
+     * settled. The tree holds the shortest paths to the targets, but towns farther away
+     * than the last target may be missing or have too long a distance.
+     *
+     * @param sourceVertex   The source town.
+     * @param targetVertices The towns the search has to reach.
+     * @return A partial shortest-path tree rooted at the source town.
+     */
+    public ShortestPathTree shortestPathTree(Town sourceVertex, Collection<Town> targetVertices) {
+        return _search(sourceVertex, targetVertices);
+    }
+
+    /**
+     * Adds the work done so far by the searches of the calling thread to the given
+     * counts. The totals only grow, so the work of one query is the difference
+     * between the counts taken before and after it on the same thread.
+     *
+     * @param counts The counts to add to.
+     */
+    void addSearchCounts(SearchCounts counts) {
+        for (Search search : searches.get()) {
+            counts.add(search.settles, search.relaxations, search.heapOperations);
+        }
+    }
+
+    /**
+     * Changes the weight of the road between two towns. When several roads join them,
+     * the lightest one is changed.
+     *
+     * @param sourceVertex      One town of the road.
+     * @param destinationVertex The other town of the road.
+     * @param weight            The new weight (distance) of the road.
+     * @return The changed road, or null if the towns are not connected.
+     */
+    public Road setRoadWeight(Town sourceVertex, Town destinationVertex, int weight) {
+        lock.writeLock().lock();
+        try {
+            Road r = _edge(sourceVertex, destinationVertex);
+            if (r != null) {
+                List<Road> roads = _roads(r);
+                r.setDistance(weight);
+                roads.sort(null);
+                _setRoads(r, roads);
+                _changed();
+            }
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Brings a shortest-path tree up to date after some roads were added, removed or given
+     * a new weight, searching again only the towns whose distance may have changed.
+     *
+     * Towns reached through a changed road lose their distance and are reached again from
+     * their unaffected neighbors; then every change that may shorten a path is relaxed and
+     * the improvement is propagated as far as it goes. Towns that were not reached through
+     * a changed road and are not improved by one are never touched.
+     *
+     * @param tree    A complete tree, as returned by shortestPathTree, that was correct before the changes.
+     * @param changed The roads that were added, removed or re-weighted since the tree was built.
+     * @return A tree that is correct for the current graph; the given tree is not modified.
+     */
+    public ShortestPathTree repairShortestPathTree(ShortestPathTree tree, Collection<Road> changed) {
+        lock.readLock().lock();
+        try {
+            return _repair(new ShortestPathTree(tree), changed);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method to repair a private copy of a tree; the caller holds a lock
+    private ShortestPathTree _repair(ShortestPathTree tree, Collection<Road> changed) {
+        // Towns below a changed road in the tree lose their distance
+        Set<Town> affected = new HashSet<>();
+        for (Road r : changed) {
+            Town a = r.getSource();
+            Town b = r.getDestination();
+            if (a.equals(tree.previous(b))) {
+                _collectSubtree(tree, b, affected);
+            } else if (b.equals(tree.previous(a))) {
+                _collectSubtree(tree, a, affected);
+            }
+        }
+        for (Town t : affected) {
+            tree.remove(t);
         }
 
-        size.put(sourceVertex, 0);
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
 
-        while (!unknown.isEmpty()) {
-            Town closestTown = null;
-            int lowCost = Integer.MAX_VALUE;
+        // Reach the affected towns again from their unaffected neighbors
+        for (Town t : affected) {
+            Map<Town, Road> neighbors = adjacency.get(t);
+            if (neighbors == null) {
+                continue;
+            }
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                Town neighbor = entry.getKey();
+                if (!affected.contains(neighbor) && tree.isReachable(neighbor)) {
+                    _relax(tree, queue, neighbor, t, entry.getValue());
+                }
+            }
+        }
 
-            for (Town town : unknown) {
-                if (size.get(town) <= lowCost) {
-                    lowCost = size.get(town);
-                    closestTown = town;
+        // Changed roads may now give a shorter way to either of their towns
+        for (Road r : changed) {
+            Road current = _edge(r.getSource(), r.getDestination());
+            if (current != null) {
+                _relax(tree, queue, r.getSource(), r.getDestination(), current);
+                _relax(tree, queue, r.getDestination(), r.getSource(), current);
+            }
+        }
+
+        // Propagate every improvement until no road can shorten a path
+        while (!queue.isEmpty()) {
+            Candidate closest = queue.poll();
+            if (closest.distance != tree.getDistance(closest.town)) {
+                continue;
+            }
+            Map<Town, Road> neighbors = adjacency.get(closest.town);
+            if (neighbors == null) {
+                continue;
+            }
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                _relax(tree, queue, closest.town, entry.getKey(), entry.getValue());
+            }
+        }
+        return tree;
+    }
+
+    // Helper method to collect a town and every town reached through it in the tree
+    private void _collectSubtree(ShortestPathTree tree, Town root, Set<Town> subtree) {
+        ArrayList<Town> stack = new ArrayList<>();
+        if (subtree.add(root)) {
+            stack.add(root);
+        }
+        while (!stack.isEmpty()) {
+            Town parent = stack.remove(stack.size() - 1);
+            Map<Town, Road> neighbors = adjacency.get(parent);
+            if (neighbors == null) {
+                continue;
+            }
+            for (Town child : neighbors.keySet()) {
+                if (parent.equals(tree.previous(child)) && subtree.add(child)) {
+                    stack.add(child);
                 }
             }
+        }
+    }
+
+    // Helper method to shorten the distance of a town through the roads between it and a
+    // neighbor, given the pair's lightest road, if that is an improvement
+    private void _relax(ShortestPathTree tree, PriorityQueue<Candidate> queue, Town from, Town to, Road lightest) {
+        if (!tree.isReachable(from) || to.equals(tree.getSource())) {
+            return;
+        }
+        Road r = _exit(lightest, from);
+        if (r == null) {
+            return;
+        }
+        int distance = tree.getDistance(from) + _weight(r, from);
+        if (distance < tree.getDistance(to)) {
+            tree.update(to, distance, from, r);
+            queue.add(new Candidate(to, distance));
+        }
+    }
+
+    /**
+     * Finds the shortest path between two towns with an A* search. The heuristic steers the
+     * search toward the destination; as long as it never overestimates, the path has the
+     * same length as the one found by shortestPath. If its estimates also never drop by more
+     * than the length of a road, as with Heuristic.straightLine, it is the same path, since
+     * both break ties between equally short routes by town name.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param heuristic         Lower-bound estimate of the distance left to the destination.
+     * @return An ArrayList of strings representing the shortest path.
+     */
+    @Override
+    public ArrayList<String> aStarShortestPath(Town sourceVertex, Town destinationVertex, Heuristic<Town> heuristic) {
+        lock.readLock().lock();
+        try {
+            return _aStar(sourceVertex, destinationVertex, heuristic).toSteps();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Helper method running an A* search. A town is expanded again if a shorter way to it turns
+    // up later, so the result stays exact for heuristics that are admissible but not consistent.
+    // The caller holds a lock.
+    private Route _aStar(Town sourceVertex, Town destinationVertex, Heuristic<Town> heuristic) {
+        int n = registry.size();
+        int source = _id(sourceVertex, n);
+        int destination = _id(destinationVertex, n);
+        if (source < 0 || destination < 0) {
+            return Route.notFound();
+        }
+
+        Search search = searches.get()[0];
+        search.reset(n);
+        search.reach(source, 0, -1, null);
+        search.push(source, heuristic.estimate(sourceVertex, destinationVertex));
+
+        while (!search.heap.isEmpty()) {
+            // Keep going while a queued town could still reach the destination on a route that
+            // ties the one found, so the tie is broken the same way as in shortestPath
+            if (search.isReached(destination) && search.heap.peekKey() > search.distance[destination]) {
+                break;
+            }
+            int u = search.poll();
+            if (u == destination) {
+                continue;
+            }
+
+            Town town = registry.townAt(u);
+            Map<Town, Road> neighbors = adjacency.get(town);
+            if (neighbors == null) {
+                continue;
+            }
+
+            int du = search.distance[u];
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                Town neighbor = entry.getKey();
+                int v = registry.idOf(neighbor);
+                Road r = _exit(entry.getValue(), town);
+                if (r == null) {
+                    continue;
+                }
+                search.relaxations++;
+                int w = _weight(r, town);
+                int dv = du + w;
+
+                if (!search.isReached(v) || dv < search.distance[v]) {
+                    search.reach(v, dv, u, r);
+                    search.push(v, dv + heuristic.estimate(neighbor, destinationVertex));
+                } else if (search.ties(v, dv, u, w)) {
+                    search.reach(v, dv, u, r);
+                }
+            }
+        }
+
+        if (!search.isReached(destination)) {
+            return Route.notFound();
+        }
+        return _collect(search, destination);
+    }
 
-            unknown.remove(closestTown);
+    // Helper method to collect the route a search found to a destination id by following
+    // the previous towns back to the source
+    private Route _collect(Search search, int destination) {
+        int hops = 0;
+        for (int v = destination; search.previous[v] >= 0; v = search.previous[v]) {
+            hops++;
+        }
+        Town[] towns = new Town[hops + 1];
+        Road[] roads = new Road[hops];
+        towns[hops] = registry.townAt(destination);
+        for (int v = destination; search.previous[v] >= 0; v = search.previous[v]) {
+            roads[--hops] = search.via[v];
+            towns[hops] = registry.townAt(search.previous[v]);
+        }
+        return new Route(towns, roads, search.distance[destination]);
+    }
+
+    // Helper method running a search under the read lock
+    private ShortestPathTree _search(Town sourceVertex, Collection<Town> targetVertices) {
+        lock.readLock().lock();
+        try {
+            return _dijkstra(sourceVertex, targetVertices);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-            Set<Town> neighborsNextDoor = new HashSet<>();
-            for (Road road : edgesOf(closestTown)) {
-                Town neighbors = road.getSource() == closestTown ? road.getDestination() : road.getSource();
-                if (unknown.contains(neighbors) && !known.contains(neighbors)) {
-                    neighborsNextDoor.add(neighbors);
+    // Helper method running Dijkstra's algorithm from a source town with an indexed heap over
+    // town ids, then copying the reached towns into a new tree. When target towns are given the
+    // search stops once all of them are settled; a target outside the graph is never settled.
+    // The caller holds a lock.
+    private ShortestPathTree _dijkstra(Town sourceVertex, Collection<Town> targetVertices) {
+        int n = registry.size();
+        ShortestPathTree tree = new ShortestPathTree(sourceVertex, registry, n);
+        int source = _id(sourceVertex, n);
+        if (source < 0 || (targetVertices != null && targetVertices.isEmpty())) {
+            return tree;
+        }
+
+        Search search = searches.get()[0];
+        search.reset(n);
+        int remaining = 0;
+        if (targetVertices != null) {
+            for (Town t : targetVertices) {
+                int id = _id(t, n);
+                if (id < 0) {
+                    remaining = -1;
+                    break;
+                }
+                if (search.markTarget(id)) {
+                    remaining++;
                 }
             }
+        }
+
+        search.reach(source, 0, -1, null);
+        search.push(source, 0);
 
-            for (Town neighbors : neighborsNextDoor) {
-                int weight = size.get(closestTown) + getEdge(closestTown, neighbors).getWeight();
+        while (!search.heap.isEmpty()) {
+            int u = search.poll();
+            search.settle(u);
+            if (remaining > 0 && search.isTarget(u) && --remaining == 0) {
+                break;
+            }
 
-                if (weight < size.get(neighbors)) {
-                    size.put(neighbors, weight);
-                    past.put(neighbors, closestTown);
+            Town town = registry.townAt(u);
+            Map<Town, Road> neighbors = adjacency.get(town);
+            if (neighbors == null) {
+                continue;
+            }
+
+            int du = search.distance[u];
+            for (Map.Entry<Town, Road> entry : neighbors.entrySet()) {
+                int v = registry.idOf(entry.getKey());
+                if (search.isSettled(v)) {
+                    continue;
+                }
+
+                Road r = _exit(entry.getValue(), town);
+                if (r == null) {
+                    continue;
+                }
+                search.relaxations++;
+                int w = _weight(r, town);
+                int dv = du + w;
+                if (!search.isReached(v) || dv < search.distance[v]) {
+                    search.reach(v, dv, u, r);
+                    search.push(v, dv);
+                } else if (search.ties(v, dv, u, w)) {
+                    search.reach(v, dv, u, r);
                 }
             }
         }
+
+        for (int v = 0; v < n; v++) {
+            if (search.isReached(v)) {
+                int p = search.previous[v];
+                tree.set(v, search.distance[v], p < 0 ? null : registry.townAt(p), search.via[v]);
+            }
+        }
+        return tree;
     }
 
-    // Helper method to get unvisited neighbors of a specific town
-    private Set<Town> _unvisitedNeighborsOfTown(Town town) {
-        return edgesOf(town).stream()
-                .map(road -> (road.getSource() == town) ? road.getDestination() : road.getSource())
-                .filter(neighbor -> unknown.contains(neighbor) && !known.contains(neighbor))
-                .collect(Collectors.toSet());
+    // Search tables of one thread, indexed by town id. Entries are only valid when their stamp
+    // matches the current epoch, so starting a new search does not have to clear the arrays.
+    // The tables grow when the registry has handed out more ids since the last search.
+    private class Search {
+        private int[] distance = new int[0];
+        private int[] previous = new int[0];     // Id of the previous town, or -1 for the source
+        private Road[] via = new Road[0];
+        private int[] reachedStamp = new int[0];
+        private int[] settledStamp = new int[0];
+        private int[] targetStamp = new int[0];
+        private IntMinHeap heap = new IntMinHeap(0);
+        private int epoch;
+
+        // Work done by this thread's searches so far; never reset, callers take differences
+        private long settles;
+        private long relaxations;
+        private long heapOperations;
+
+        // Starts a new search over ids below n
+        void reset(int n) {
+            if (distance.length < n) {
+                int capacity = Math.max(n, distance.length * 2);
+                distance = new int[capacity];
+                previous = new int[capacity];
+                via = new Road[capacity];
+                reachedStamp = new int[capacity];
+                settledStamp = new int[capacity];
+                targetStamp = new int[capacity];
+                heap = new IntMinHeap(capacity);
+                epoch = 0;
+            }
+            heap.clear();
+            if (++epoch == 0) {
+                Arrays.fill(reachedStamp, 0);
+                Arrays.fill(settledStamp, 0);
+                Arrays.fill(targetStamp, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean isReached(int v) {
+            return reachedStamp[v] == epoch;
+        }
+
+        boolean isSettled(int v) {
+            return settledStamp[v] == epoch;
+        }
+
+        boolean isTarget(int v) {
+            return targetStamp[v] == epoch;
+        }
+
+        void settle(int v) {
+            settledStamp[v] = epoch;
+        }
+
+        // Queues an id or lowers its key
+        void push(int v, int key) {
+            heapOperations++;
+            heap.push(v, key);
+        }
+
+        // Removes the id with the smallest key, counting it as settled
+        int poll() {
+            settles++;
+            heapOperations++;
+            return heap.poll();
+        }
+
+        // Checks if reaching the reached id v from u at distance dv over a road of weight w ties
+        // its best known way and should replace it. Of the towns a tied route can come from, the
+        // one whose name sorts first wins, which is also the lowest id in a GraphSnapshot, so
+        // every search ends on the same route. Zero-weight roads never break a tie, so two towns
+        // cannot end up each other's previous town.
+        boolean ties(int v, int dv, int u, int w) {
+            return w > 0 && dv == distance[v] && registry.townAt(u).compareTo(registry.townAt(previous[v])) < 0;
+        }
+
+        // Marks a target id; returns false if it was already marked
+        boolean markTarget(int v) {
+            if (targetStamp[v] == epoch) {
+                return false;
+            }
+            targetStamp[v] = epoch;
+            return true;
+        }
+
+        void reach(int v, int d, int from, Road r) {
+            reachedStamp[v] = epoch;
+            distance[v] = d;
+            previous[v] = from;
+            via[v] = r;
+        }
     }
 
-    // Helper method to get the nearest unvisited town
-    private Town _getNearestUnvisitedTown() {
-        return unknown.stream()
-                .min(Comparator.comparingInt(size::get))
-                .orElse(null);
+    // Entry in the priority queue of a tree repair: a town and the tentative distance it was queued with
+    private static class Candidate implements Comparable<Candidate> {
+        private final Town town;
+        private final int distance;
+
+        Candidate(Town town, int distance) {
+            this.town = town;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate c) {
+            return Integer.compare(distance, c.distance);
+        }
     }
-}
\ No newline at end of file
+}
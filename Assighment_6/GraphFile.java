@@ -0,0 +1,301 @@
+package graphs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves graphs in a compact binary format and loads them back onto the heap.
+ *
+ * A file holds a GraphSnapshot exactly as it is laid out in memory, so loading it
+ * needs no parsing, sorting or id assignment: the file is read through
+ * FileChannel.map, every section is copied into a heap array with one bulk read,
+ * and the names are decoded. This is a fast load, not a zero-copy one. The
+ * snapshot takes as much memory as one built from a graph and does not depend on
+ * the file once load returns. All values are little-endian.
+ *
+ * <pre>
+ * header     magic "TGRF", format version, graph version (long),
+ *            town count, road count, CSR slot count, name bytes
+ * doubles    x and y coordinate of each town (NaN when the town has none)
+ * ints       road sources, road destinations, road weights,
+ *            CSR offsets, targets, weights and road ids,
+ *            end offset of each town name, end offset of each road name
+ * bytes      the town names followed by the road names, in UTF-8
+ * </pre>
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class GraphFile {
+
+    /** Identifies a graph file: the bytes "TGRF". */
+    public static final int MAGIC = 0x54475246;
+
+    /** Layout version written by this class; files with another version are rejected. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+
+    private GraphFile() {
+    }
+
+    /**
+     * Saves the current towns and roads of a graph.
+     *
+     * @param graph The graph to save.
+     * @param file  The file to write; it is replaced if it exists.
+     * @throws IOException if the file cannot be written, the graph is too large for the format or it is directed.
+     */
+    public static void save(Graph graph, File file) throws IOException {
+        save(graph.snapshot(), file);
+    }
+
+    /**
+     * Saves a snapshot.
+     *
+     * @param snapshot The snapshot to save.
+     * @param file     The file to write; it is replaced if it exists.
+     * @throws IOException if the file cannot be written, the snapshot is too large for the format or it is directed.
+     */
+    public static void save(GraphSnapshot snapshot, File file) throws IOException {
+        if (snapshot.isDirected()) {
+            throw new IOException("Format version " + FORMAT_VERSION + " cannot hold a directed graph");
+        }
+        int townCount = snapshot.townCount();
+        int roadCount = snapshot.roadCount();
+        int slotCount = snapshot.targets().length;
+
+        byte[][] townNames = new byte[townCount][];
+        byte[][] roadNames = new byte[roadCount][];
+        int[] townNameEnds = new int[townCount];
+        int[] roadNameEnds = new int[roadCount];
+        long nameBytes = 0;
+        for (int i = 0; i < townCount; i++) {
+            townNames[i] = snapshot.townAt(i).getName().getBytes(StandardCharsets.UTF_8);
+            nameBytes += townNames[i].length;
+            townNameEnds[i] = (int) Math.min(nameBytes, Integer.MAX_VALUE);
+        }
+        for (int i = 0; i < roadCount; i++) {
+            roadNames[i] = snapshot.roadNames()[i].getBytes(StandardCharsets.UTF_8);
+            nameBytes += roadNames[i].length;
+            roadNameEnds[i] = (int) Math.min(nameBytes, Integer.MAX_VALUE);
+        }
+
+        long size = _size(townCount, roadCount, slotCount, nameBytes);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph is too large for format version " + FORMAT_VERSION + ": " + size + " bytes");
+        }
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw"); FileChannel channel = out.getChannel()) {
+            out.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(snapshot.getVersion());
+            buffer.putInt(townCount).putInt(roadCount).putInt(slotCount).putInt((int) nameBytes);
+
+            for (int i = 0; i < townCount; i++) {
+                buffer.putDouble(snapshot.townAt(i).getX());
+            }
+            for (int i = 0; i < townCount; i++) {
+                buffer.putDouble(snapshot.townAt(i).getY());
+            }
+
+            int[][] sections = { snapshot.roadSources(), snapshot.roadDestinations(), snapshot.roadWeights(),
+                    snapshot.offsets(), snapshot.targets(), snapshot.weights(), snapshot.roadIds(),
+                    townNameEnds, roadNameEnds };
+            for (int[] section : sections) {
+                buffer.asIntBuffer().put(section);
+                buffer.position(buffer.position() + 4 * section.length);
+            }
+
+            for (byte[] name : townNames) {
+                buffer.put(name);
+            }
+            for (byte[] name : roadNames) {
+                buffer.put(name);
+            }
+        }
+    }
+
+    /**
+     * Loads a file written by save as a snapshot, copying its arrays and names onto the heap.
+     *
+     * @param file The file to read.
+     * @return The snapshot stored in the file.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException           if the file cannot be read or is not a valid graph file.
+     */
+    public static GraphSnapshot load(File file) throws FileNotFoundException, IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a graph file");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a graph file");
+            }
+            int format = buffer.getInt();
+            if (format != FORMAT_VERSION) {
+                throw new IOException(file + " has format version " + format + ", expected " + FORMAT_VERSION);
+            }
+            long version = buffer.getLong();
+            int townCount = buffer.getInt();
+            int roadCount = buffer.getInt();
+            int slotCount = buffer.getInt();
+            int nameBytes = buffer.getInt();
+            if (townCount < 0 || roadCount < 0 || slotCount != 2 * roadCount || nameBytes < 0
+                    || _size(townCount, roadCount, slotCount, nameBytes) != size) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+
+            double[] x = new double[townCount];
+            double[] y = new double[townCount];
+            buffer.asDoubleBuffer().get(x);
+            buffer.position(buffer.position() + 8 * townCount);
+            buffer.asDoubleBuffer().get(y);
+            buffer.position(buffer.position() + 8 * townCount);
+
+            int[] roadSources = _ints(buffer, roadCount);
+            int[] roadDestinations = _ints(buffer, roadCount);
+            int[] roadWeights = _ints(buffer, roadCount);
+            int[] offsets = _ints(buffer, townCount + 1);
+            int[] targets = _ints(buffer, slotCount);
+            int[] weights = _ints(buffer, slotCount);
+            int[] roadIds = _ints(buffer, slotCount);
+            int[] townNameEnds = _ints(buffer, townCount);
+            int[] roadNameEnds = _ints(buffer, roadCount);
+
+            _checkLayout(file, townCount, roadSources, roadDestinations, roadWeights, offsets, targets, weights, roadIds);
+
+            byte[] names = new byte[nameBytes];
+            buffer.get(names);
+
+            Town[] towns = new Town[townCount];
+            int start = 0;
+            for (int i = 0; i < townCount; i++) {
+                String name = _name(names, start, townNameEnds[i], file);
+                towns[i] = Double.isNaN(x[i]) ? new Town(name) : new Town(name, x[i], y[i]);
+                start = townNameEnds[i];
+            }
+            String[] roadNames = new String[roadCount];
+            for (int i = 0; i < roadCount; i++) {
+                roadNames[i] = _name(names, start, roadNameEnds[i], file);
+                start = roadNameEnds[i];
+            }
+
+            return new GraphSnapshot(towns, roadNames, roadSources, roadDestinations, roadWeights,
+                    offsets, targets, weights, roadIds, version);
+        }
+    }
+
+    /**
+     * Loads a file written by save and adds its towns and roads to a graph. The file is
+     * loaded as a snapshot first, then a Road is built for each of its roads, so this costs
+     * more than load alone.
+     *
+     * @param file  The file to read.
+     * @param graph The graph to add the towns and roads to.
+     * @return The number of roads added; a road is skipped if the graph already has a road
+     *         with the same name between the same towns.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException           if the file cannot be read or is not a valid graph file.
+     */
+    public static int loadInto(File file, Graph graph) throws FileNotFoundException, IOException {
+        GraphSnapshot snapshot = load(file);
+
+        List<Road> roads = new ArrayList<>(snapshot.roadCount());
+        for (int r = 0; r < snapshot.roadCount(); r++) {
+            roads.add(new Road(snapshot.townAt(snapshot.roadSources()[r]), snapshot.townAt(snapshot.roadDestinations()[r]),
+                    snapshot.roadWeights()[r], snapshot.roadNames()[r]));
+        }
+        boolean[] added = new boolean[roads.size()];
+        graph.addAll(roads, added);
+
+        int[] offsets = snapshot.offsets();
+        for (int i = 0; i < snapshot.townCount(); i++) {
+            if (offsets[i] == offsets[i + 1]) {
+                graph.addVertex(snapshot.townAt(i));
+            }
+        }
+
+        int roadsAdded = 0;
+        for (boolean a : added) {
+            if (a) {
+                roadsAdded++;
+            }
+        }
+        return roadsAdded;
+    }
+
+    // Helper method to check that every id and offset read from a file is in range and that each
+    // CSR slot matches its road, so a corrupt file is rejected here rather than failing inside a
+    // search. Name ends are checked as the names are decoded.
+    private static void _checkLayout(File file, int townCount, int[] roadSources, int[] roadDestinations,
+            int[] roadWeights, int[] offsets, int[] targets, int[] weights, int[] roadIds) throws IOException {
+        for (int r = 0; r < roadSources.length; r++) {
+            if (!_inRange(roadSources[r], townCount) || !_inRange(roadDestinations[r], townCount) || roadWeights[r] < 0) {
+                throw new IOException(file + " is corrupt: bad road " + r);
+            }
+        }
+        if (offsets[0] != 0 || offsets[townCount] != targets.length) {
+            throw new IOException(file + " is corrupt: bad CSR offsets");
+        }
+        for (int t = 0; t < townCount; t++) {
+            if (offsets[t + 1] < offsets[t] || offsets[t + 1] > targets.length) {
+                throw new IOException(file + " is corrupt: bad CSR offsets");
+            }
+            for (int slot = offsets[t]; slot < offsets[t + 1]; slot++) {
+                int target = targets[slot];
+                int r = roadIds[slot];
+                if (!_inRange(target, townCount) || !_inRange(r, roadSources.length) || weights[slot] != roadWeights[r]
+                        || !(roadSources[r] == t && roadDestinations[r] == target
+                                || roadDestinations[r] == t && roadSources[r] == target)) {
+                    throw new IOException(file + " is corrupt: bad CSR slot " + slot);
+                }
+            }
+        }
+    }
+
+    // Helper method to check that an id is between 0 and count - 1
+    private static boolean _inRange(int id, int count) {
+        return id >= 0 && id < count;
+    }
+
+    // Helper method to compute the file size for the given counts
+    private static long _size(int townCount, int roadCount, int slotCount, long nameBytes) {
+        long ints = 4L * roadCount + 3L * slotCount + 2L * townCount + 1;
+        return HEADER_BYTES + 16L * townCount + 4 * ints + nameBytes;
+    }
+
+    // Helper method to bulk-read the next int section of the buffer
+    private static int[] _ints(MappedByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    // Helper method to decode one name from the name bytes
+    private static String _name(byte[] names, int start, int end, File file) throws IOException {
+        if (end < start || end > names.length) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+        return new String(names, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -202,6 +202,23 @@ public interface GraphInterface<V, E>
      * 
      */
     public void dijkstraShortestPath(V sourceVertex);
+
+    /**
+     * Find the shortest path from the sourceVertex to the destinationVertex
+     * with an A* search guided by the given heuristic. With an admissible
+     * heuristic the path has the same length as the one from shortestPath,
+     * while far fewer vertices are usually explored. The default
+     * implementation ignores the heuristic and calls shortestPath, so
+     * implementations without an A* search still return the same path.
+     * @param sourceVertex starting vertex
+     * @param destinationVertex ending vertex
+     * @param heuristic lower-bound estimate of the distance left to the destinationVertex
+     * @return An arraylist of Strings that describe the path from sourceVertex
+     * to destinationVertex, in the same format as shortestPath
+     */
+    public default ArrayList<String> aStarShortestPath(V sourceVertex, V destinationVertex, Heuristic<V> heuristic) {
+        return shortestPath(sourceVertex, destinationVertex);
+    }
 }
 
 // End Graph.java
\ No newline at end of file
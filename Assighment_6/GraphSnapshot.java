@@ -0,0 +1,1180 @@
+package graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, compact copy of a Graph meant for read-heavy routing. Towns are
+ * numbered with dense int ids (in name order) and the roads are stored in
+ * compressed sparse row (CSR) form: the roads of town i occupy slots
+ * offsets[i] to offsets[i + 1] - 1 of the targets, weights and roadIds arrays.
+ * Searches run entirely on these int arrays; Town and Road objects are only
+ * looked up or created at the edges of the API.
+ *
+ * Every thread gets its own reusable search state, so one snapshot can serve
+ * any number of concurrent queries without locking.
+ *
+ * A snapshot of a directed graph keeps two CSR layouts: the forward one lists
+ * the roads that can be taken out of each town, at the weight for that
+ * direction, and the reverse one lists the roads that lead into each town.
+ * Searches from a source use the forward layout, searches toward a target the
+ * reverse one. In an undirected snapshot both are the same arrays.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class GraphSnapshot implements GraphInterface<Town, Road> {
+
+    /** Distance reported for a town that cannot be reached. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int NONE = -1;
+
+    // Towns by id and the reverse lookup used to translate API arguments
+    private final Town[] towns;
+    private final Map<Town, Integer> ids;
+
+    // Forward CSR adjacency: every road appears under each town it can be taken from
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] roadIds;
+
+    // Reverse CSR adjacency: every road appears under each town it can be taken to, with the
+    // town it comes from as the target. The same arrays as the forward ones when undirected.
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+    private final int[] reverseWeights;
+    private final int[] reverseRoadIds;
+
+    // Whether the snapshot follows the direction of roads
+    private final boolean directed;
+
+    // Roads by id
+    private final String[] roadNames;
+    private final int[] roadSources;
+    private final int[] roadDestinations;
+    private final int[] roadWeights;
+    private final int[] roadReverseWeights;  // Weight from destination to source, or Road.CLOSED; null when undirected
+
+    // Version of the graph the snapshot was taken from
+    private final long version;
+
+    // Search state of each thread, kept between queries so its arrays are reused; the
+    // backward state is only created for bidirectional searches
+    private final ThreadLocal<Search> searches;
+    private final ThreadLocal<Search> backwardSearches;
+
+    // Read-only sets built the first time vertexSet or edgeSet is called
+    private volatile Set<Town> townView;
+    private volatile Set<Road> roadView;
+
+    // Component labels built the first time they are needed
+    private volatile ConnectedComponents componentView;
+
+    // Road ids by EdgeKey, built the first time a road is looked up by its towns
+    private volatile EdgeIndex edgeIndex;
+
+    /**
+     * Builds a snapshot of the given towns and roads. Towns that only appear as
+     * road endpoints are included as well.
+     *
+     * @param townSet  The towns of the graph.
+     * @param roadSet  The roads of the graph.
+     * @param version  The version of the graph.
+     * @param directed true to follow one-way roads and reverse weights, false to travel every road both ways at its weight.
+     */
+    GraphSnapshot(Collection<Town> townSet, Collection<Road> roadSet, long version, boolean directed) {
+        this.version = version;
+        this.directed = directed;
+
+        Set<Town> allTowns = new HashSet<>(townSet);
+        for (Road r : roadSet) {
+            allTowns.add(r.getSource());
+            allTowns.add(r.getDestination());
+        }
+
+        towns = allTowns.toArray(new Town[0]);
+        Arrays.sort(towns);
+        ids = new HashMap<>();
+        for (int i = 0; i < towns.length; i++) {
+            ids.put(towns[i], i);
+        }
+
+        int roadCount = roadSet.size();
+        roadNames = new String[roadCount];
+        roadSources = new int[roadCount];
+        roadDestinations = new int[roadCount];
+        roadWeights = new int[roadCount];
+        int[] reverse = directed ? new int[roadCount] : null;
+        boolean anyDirected = false;
+
+        int r = 0;
+        for (Road road : roadSet) {
+            roadNames[r] = road.getName();
+            roadSources[r] = ids.get(road.getSource());
+            roadDestinations[r] = ids.get(road.getDestination());
+            roadWeights[r] = road.getWeight();
+            if (directed) {
+                reverse[r] = road.getReverseWeight();
+                anyDirected |= reverse[r] != roadWeights[r];
+            }
+            r++;
+        }
+        // When every road is two-way with one weight, both layouts are the same
+        roadReverseWeights = anyDirected ? reverse : directed ? roadWeights : null;
+
+        // Forward slots go from source to destination, reverse slots the other way around
+        offsets = new int[towns.length + 1];
+        targets = _slots(offsets, roadSources, roadDestinations, roadReverseWeights);
+        weights = new int[targets.length];
+        roadIds = new int[targets.length];
+        _fill(offsets, targets, weights, roadIds, roadSources, roadDestinations, roadReverseWeights);
+        if (anyDirected) {
+            reverseOffsets = new int[towns.length + 1];
+            reverseTargets = _slots(reverseOffsets, roadDestinations, roadSources, roadReverseWeights);
+            reverseWeights = new int[reverseTargets.length];
+            reverseRoadIds = new int[reverseTargets.length];
+            _fill(reverseOffsets, reverseTargets, reverseWeights, reverseRoadIds, roadDestinations, roadSources,
+                    roadReverseWeights);
+        } else {
+            reverseOffsets = offsets;
+            reverseTargets = targets;
+            reverseWeights = weights;
+            reverseRoadIds = roadIds;
+        }
+
+        searches = ThreadLocal.withInitial(Search::new);
+        backwardSearches = ThreadLocal.withInitial(Search::new);
+    }
+
+    // Helper method to count the CSR slots of every town into offsets and allocate the target
+    // array. Every road gets a slot under its from town, and one under its to town unless
+    // closedBack says it cannot be taken back (null when undirected: every road is two-way).
+    private int[] _slots(int[] offsets, int[] from, int[] to, int[] closedBack) {
+        for (int r = 0; r < from.length; r++) {
+            offsets[from[r] + 1]++;
+            if (closedBack == null || closedBack[r] != Road.CLOSED) {
+                offsets[to[r] + 1]++;
+            }
+        }
+        for (int i = 0; i < towns.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        return new int[offsets[towns.length]];
+    }
+
+    // Helper method to fill the slots counted by _slots. In the forward layout from and to are
+    // the road sources and destinations; in the reverse layout they are swapped, so a slot under
+    // town t leads back to a town with a road into t. Either way the slot under a road's from
+    // town carries the road's weight and the slot under its to town the reverse weight.
+    private void _fill(int[] offsets, int[] targets, int[] weights, int[] roadIds, int[] from, int[] to,
+            int[] reverse) {
+        int[] next = Arrays.copyOf(offsets, towns.length);
+        for (int r = 0; r < from.length; r++) {
+            int back = reverse == null ? roadWeights[r] : reverse[r];
+            _addSlot(next, targets, weights, roadIds, from[r], to[r], roadWeights[r], r);
+            if (back != Road.CLOSED) {
+                _addSlot(next, targets, weights, roadIds, to[r], from[r], back, r);
+            }
+        }
+    }
+
+    /**
+     * Wraps arrays that already hold an undirected snapshot, as read back by GraphFile.
+     * The arrays are used as given and must follow the layout described on this class.
+     *
+     * @param towns            The towns in id order.
+     * @param roadNames        The road names in id order.
+     * @param roadSources      The source town id of each road.
+     * @param roadDestinations The destination town id of each road.
+     * @param roadWeights      The weight of each road.
+     * @param offsets          The first CSR slot of each town, followed by the slot count.
+     * @param targets          The town at the other end of each slot.
+     * @param weights          The weight of the road in each slot.
+     * @param roadIds          The road id of each slot.
+     * @param version          The version of the graph the arrays were taken from.
+     */
+    GraphSnapshot(Town[] towns, String[] roadNames, int[] roadSources, int[] roadDestinations, int[] roadWeights,
+            int[] offsets, int[] targets, int[] weights, int[] roadIds, long version) {
+        this.towns = towns;
+        this.roadNames = roadNames;
+        this.roadSources = roadSources;
+        this.roadDestinations = roadDestinations;
+        this.roadWeights = roadWeights;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.roadIds = roadIds;
+        this.version = version;
+        directed = false;
+        roadReverseWeights = null;
+        reverseOffsets = offsets;
+        reverseTargets = targets;
+        reverseWeights = weights;
+        reverseRoadIds = roadIds;
+
+        ids = new HashMap<>(towns.length * 4 / 3 + 1);
+        for (int i = 0; i < towns.length; i++) {
+            ids.put(towns[i], i);
+        }
+        searches = ThreadLocal.withInitial(Search::new);
+        backwardSearches = ThreadLocal.withInitial(Search::new);
+    }
+
+    // Helper method to fill the next free CSR slot of a town
+    private static void _addSlot(int[] next, int[] targets, int[] weights, int[] roadIds, int from, int to, int weight,
+            int road) {
+        int slot = next[from]++;
+        targets[slot] = to;
+        weights[slot] = weight;
+        roadIds[slot] = road;
+    }
+
+    /**
+     * Gets the number of towns in the snapshot.
+     *
+     * @return The number of towns.
+     */
+    public int townCount() {
+        return towns.length;
+    }
+
+    /**
+     * Gets the number of roads in the snapshot.
+     *
+     * @return The number of roads.
+     */
+    public int roadCount() {
+        return roadNames.length;
+    }
+
+    /**
+     * Gets the version of the graph this snapshot was taken from.
+     *
+     * @return The graph version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Estimates the heap used by the snapshot's arrays, not counting the Town objects
+     * and road name strings it shares with the graph.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long memoryBytes() {
+        long ints = offsets.length + 3L * targets.length + 3L * roadNames.length;
+        if (reverseTargets != targets) {
+            ints += reverseOffsets.length + 3L * reverseTargets.length + roadReverseWeights.length;
+        }
+        return 4 * ints + 8L * (towns.length + roadNames.length) + 48L * ids.size();
+    }
+
+    /**
+     * Gets the dense id of a town. Ids run from 0 to townCount() - 1 in town name order.
+     *
+     * @param t The town to look up.
+     * @return The id of the town, or -1 if it is not in the snapshot.
+     */
+    public int idOf(Town t) {
+        return _id(t);
+    }
+
+    /**
+     * Gets the connected components of the snapshot. They are labelled the first
+     * time they are asked for and shared afterwards.
+     *
+     * @return The connected components.
+     */
+    public ConnectedComponents connectedComponents() {
+        ConnectedComponents view = componentView;
+        if (view == null) {
+            view = new ConnectedComponents(this);
+            componentView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Gets the connected components of the snapshot if they have been labelled already,
+     * without labelling them.
+     *
+     * @return The connected components, or null if nobody has asked for them yet.
+     */
+    ConnectedComponents labelledComponents() {
+        return componentView;
+    }
+
+    /**
+     * Checks if a path exists between two towns, without searching.
+     *
+     * @param town1 The first town.
+     * @param town2 The second town.
+     * @return true if both towns are in the snapshot and connected, false otherwise.
+     */
+    public boolean isConnected(Town town1, Town town2) {
+        return connectedComponents().isConnected(town1, town2);
+    }
+
+    /**
+     * Gets the town with the given id.
+     *
+     * @param id The id of the town.
+     * @return The town.
+     */
+    public Town townAt(int id) {
+        return towns[id];
+    }
+
+    /**
+     * Describes one road of a path in the format "Town_1 via Road_2 to Town_3 4 mi".
+     *
+     * @param from The id of the town the road is taken from.
+     * @param road The id of the road.
+     * @param to   The id of the town the road leads to.
+     * @return The description of the step.
+     */
+    String describeStep(int from, int road, int to) {
+        return towns[from].getName() + " via " + roadNames[road] + " to " + towns[to].getName() + " " + stepWeight(from, road) + " mi";
+    }
+
+    /**
+     * Gets the weight of taking a road from one of its towns.
+     *
+     * @param from The id of the town the road is taken from.
+     * @param road The id of the road.
+     * @return The weight in that direction.
+     */
+    int stepWeight(int from, int road) {
+        return directed && from != roadSources[road] ? roadReverseWeights[road] : roadWeights[road];
+    }
+
+    /**
+     * Checks if searches in this snapshot follow the direction of roads.
+     *
+     * @return true if the snapshot was taken from a directed graph, false otherwise.
+     */
+    public boolean isDirected() {
+        return directed;
+    }
+
+    // The arrays below are shared, not copied; callers in this package must not modify them
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    int[] weights() {
+        return weights;
+    }
+
+    int[] roadIds() {
+        return roadIds;
+    }
+
+    String[] roadNames() {
+        return roadNames;
+    }
+
+    int[] roadSources() {
+        return roadSources;
+    }
+
+    int[] roadDestinations() {
+        return roadDestinations;
+    }
+
+    int[] roadWeights() {
+        return roadWeights;
+    }
+
+    /**
+     * Gets the edge (road) between two towns; the lightest one if several roads join them.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The road between the source and destination towns, or null if there is none.
+     */
+    @Override
+    public Road getEdge(Town sourceVertex, Town destinationVertex) {
+        int r = _findRoad(_id(sourceVertex), _id(destinationVertex));
+        return r == NONE ? null : _road(r);
+    }
+
+    /**
+     * Gets the road with the given key; the lightest one if several roads join the towns.
+     *
+     * @param key The unordered pair of town ids the road joins.
+     * @return The road, or null if the towns are not joined.
+     */
+    public Road getEdge(EdgeKey key) {
+        int r = key.getHigh() < towns.length ? _findRoad(key.getLow(), key.getHigh()) : NONE;
+        return r == NONE ? null : _road(r);
+    }
+
+    // Helper method to look up the id of the road between two town ids in the road index
+    private int _findRoad(int from, int to) {
+        if (from == NONE || to == NONE) {
+            return NONE;
+        }
+        EdgeIndex index = edgeIndex;
+        if (index == null) {
+            index = new EdgeIndex();
+            edgeIndex = index;
+        }
+        return index.find(EdgeKey.pack(from, to));
+    }
+
+    // Helper method to translate a town into its id
+    private int _id(Town t) {
+        Integer id = t == null ? null : ids.get(t);
+        return id == null ? NONE : id;
+    }
+
+    // Helper method to materialize a road from its id
+    private Road _road(int r) {
+        if (directed) {
+            return new Road(towns[roadSources[r]], towns[roadDestinations[r]], roadWeights[r], roadReverseWeights[r],
+                    roadNames[r]);
+        }
+        return new Road(towns[roadSources[r]], towns[roadDestinations[r]], roadWeights[r], roadNames[r]);
+    }
+
+    /**
+     * Not supported; a snapshot cannot be modified.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, String description) {
+        throw new UnsupportedOperationException("GraphSnapshot is immutable");
+    }
+
+    /**
+     * Not supported; a snapshot cannot be modified.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean addVertex(Town v) {
+        throw new UnsupportedOperationException("GraphSnapshot is immutable");
+    }
+
+    /**
+     * Checks if there is an edge (road) between two towns.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return true if there is an edge between the source and destination towns, false otherwise.
+     */
+    @Override
+    public boolean containsEdge(Town sourceVertex, Town destinationVertex) {
+        return _findRoad(_id(sourceVertex), _id(destinationVertex)) != NONE;
+    }
+
+    /**
+     * Checks if the snapshot contains a specific town.
+     *
+     * @param v The town to be checked.
+     * @return true if the town is in the snapshot, false otherwise.
+     */
+    @Override
+    public boolean containsVertex(Town v) {
+        return _id(v) != NONE;
+    }
+
+    /**
+     * Returns a read-only set containing all roads in the snapshot. The set is built on
+     * the first call and shared after that.
+     *
+     * @return An unmodifiable set of all roads in the snapshot.
+     */
+    @Override
+    public Set<Road> edgeSet() {
+        Set<Road> view = roadView;
+        if (view == null) {
+            Set<Road> roads = new HashSet<>();
+            for (int r = 0; r < roadNames.length; r++) {
+                roads.add(_road(r));
+            }
+            view = Collections.unmodifiableSet(roads);
+            roadView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Returns a set containing all roads connected to a specific town.
+     *
+     * @param vertex The town to find connected roads for.
+     * @return A set of roads connected to the specified town.
+     */
+    @Override
+    public Set<Road> edgesOf(Town vertex) {
+        Set<Road> roads = new HashSet<>();
+        int id = _id(vertex);
+        if (id != NONE) {
+            for (int slot = offsets[id]; slot < offsets[id + 1]; slot++) {
+                roads.add(_road(roadIds[slot]));
+            }
+            // One-way roads into the town only have a reverse slot
+            if (directed) {
+                for (int slot = reverseOffsets[id]; slot < reverseOffsets[id + 1]; slot++) {
+                    roads.add(_road(reverseRoadIds[slot]));
+                }
+            }
+        }
+        return roads;
+    }
+
+    /**
+     * Not supported; a snapshot cannot be modified.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public Road removeEdge(Town sourceVertex, Town destinationVertex, int weight, String description) {
+        throw new UnsupportedOperationException("GraphSnapshot is immutable");
+    }
+
+    /**
+     * Not supported; a snapshot cannot be modified.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean removeVertex(Town v) {
+        throw new UnsupportedOperationException("GraphSnapshot is immutable");
+    }
+
+    /**
+     * Returns a read-only set containing all towns in the snapshot. The set is built on
+     * the first call and shared after that.
+     *
+     * @return An unmodifiable set of all towns in the snapshot.
+     */
+    @Override
+    public Set<Town> vertexSet() {
+        Set<Town> view = townView;
+        if (view == null) {
+            view = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(towns)));
+            townView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Finds the shortest path between two towns using Dijkstra's algorithm over the
+     * CSR arrays. The search stops as soon as the destination town has been settled.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return An ArrayList of strings representing the shortest path.
+     */
+    @Override
+    public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex) {
+        return route(sourceVertex, destinationVertex).toSteps();
+    }
+
+    /**
+     * Finds the shortest route between two towns with the same search as shortestPath,
+     * without formatting its steps.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The route; not found if either town is unknown or the towns are not connected.
+     */
+    public Route route(Town sourceVertex, Town destinationVertex) {
+        // Towns in different components have no path; skip the search that would settle a whole region
+        if (!isConnected(sourceVertex, destinationVertex)) {
+            return Route.notFound();
+        }
+        int target = _id(destinationVertex);
+        Search search = searches.get();
+        search.run(_id(sourceVertex), target);
+        return _route(search, target);
+    }
+
+    /**
+     * Finds the shortest route between two towns with Dijkstra's algorithm run from both
+     * ends at once: forward from the source over the forward layout and backward from the
+     * destination over the reverse layout. The side whose queue has the smaller head is
+     * expanded next, and the search stops when the two heads together are no shorter than
+     * the best meeting point found so far. The route has the same length as the one found
+     * by route, usually after settling far fewer towns.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @return The route; not found if either town is unknown or the towns are not connected.
+     */
+    public Route bidirectionalRoute(Town sourceVertex, Town destinationVertex) {
+        int source = _id(sourceVertex);
+        int target = _id(destinationVertex);
+        if (source == NONE || target == NONE || !isConnected(sourceVertex, destinationVertex)) {
+            return Route.notFound();
+        }
+        if (source == target) {
+            return new Route(this, new int[] { source }, new int[0], 0);
+        }
+
+        Search forward = searches.get();
+        Search backward = backwardSearches.get();
+        forward._reset();
+        backward._reset();
+        forward._reach(source, 0, NONE, NONE);
+        forward.heap.push(source, 0);
+        backward._reach(target, 0, NONE, NONE);
+        backward.heap.push(target, 0);
+
+        int meeting = NONE;
+        long best = Long.MAX_VALUE;
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if ((long) forward.heap.peekKey() + backward.heap.peekKey() >= best) {
+                break;
+            }
+
+            boolean forwardTurn = forward.heap.peekKey() <= backward.heap.peekKey();
+            Search side = forwardTurn ? forward : backward;
+            Search other = forwardTurn ? backward : forward;
+            int[] sideOffsets = forwardTurn ? offsets : reverseOffsets;
+            int[] sideTargets = forwardTurn ? targets : reverseTargets;
+            int[] sideWeights = forwardTurn ? weights : reverseWeights;
+            int[] sideRoadIds = forwardTurn ? roadIds : reverseRoadIds;
+
+            int u = side.heap.poll();
+            side.settledStamp[u] = side.epoch;
+            int du = side.distance[u];
+            for (int slot = sideOffsets[u]; slot < sideOffsets[u + 1]; slot++) {
+                int v = sideTargets[slot];
+                if (side.settledStamp[v] == side.epoch) {
+                    continue;
+                }
+                int dv = du + sideWeights[slot];
+                if (!side.reached(v) || dv < side.distance[v]) {
+                    side._reach(v, dv, u, sideRoadIds[slot]);
+                    side.heap.push(v, dv);
+                }
+                if (other.reached(v) && (long) side.distance[v] + other.distance[v] < best) {
+                    best = (long) side.distance[v] + other.distance[v];
+                    meeting = v;
+                }
+            }
+        }
+        if (meeting == NONE) {
+            return Route.notFound();
+        }
+
+        // Count the roads on each side of the meeting town, then fill the arrays from it outward
+        int forwardHops = 0;
+        for (int t = meeting; forward.predecessor[t] != NONE; t = forward.predecessor[t]) {
+            forwardHops++;
+        }
+        int hops = forwardHops;
+        for (int t = meeting; backward.predecessor[t] != NONE; t = backward.predecessor[t]) {
+            hops++;
+        }
+        int[] townIds = new int[hops + 1];
+        int[] roadIds = new int[hops];
+        townIds[forwardHops] = meeting;
+        int i = forwardHops;
+        for (int t = meeting; forward.predecessor[t] != NONE; t = forward.predecessor[t]) {
+            roadIds[--i] = forward.predecessorRoad[t];
+            townIds[i] = forward.predecessor[t];
+        }
+        i = forwardHops;
+        for (int t = meeting; backward.predecessor[t] != NONE; t = backward.predecessor[t]) {
+            roadIds[i] = backward.predecessorRoad[t];
+            townIds[++i] = backward.predecessor[t];
+        }
+        return new Route(this, townIds, roadIds, (int) best);
+    }
+
+    /**
+     * Finds the shortest path between two towns with an A* search over the CSR arrays.
+     * As long as the heuristic never overestimates, the path has the same length as the
+     * one found by shortestPath; if no estimate drops by more than the length of a road
+     * along the way, it is the very same path, ties included.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param heuristic         Lower-bound estimate of the distance left to the destination.
+     * @return An ArrayList of strings representing the shortest path.
+     */
+    @Override
+    public ArrayList<String> aStarShortestPath(Town sourceVertex, Town destinationVertex, Heuristic<Town> heuristic) {
+        int target = _id(destinationVertex);
+        Search search = searches.get();
+        search.runAStar(_id(sourceVertex), target, heuristic);
+        return _route(search, target).toSteps();
+    }
+
+    /**
+     * Finds up to k shortest loop-free paths between two towns with Yen's algorithm.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param k                 The number of paths wanted.
+     * @return The paths, shortest first, each as shortestPath would return it.
+     */
+    public ArrayList<ArrayList<String>> kShortestPaths(Town sourceVertex, Town destinationVertex, int k) {
+        ArrayList<ArrayList<String>> paths = new ArrayList<>();
+        for (Route r : kShortestRoutes(sourceVertex, destinationVertex, k)) {
+            paths.add(r.toSteps());
+        }
+        return paths;
+    }
+
+    /**
+     * Finds up to k shortest loop-free routes between two towns with Yen's algorithm.
+     * Each new route leaves the previous one at some town (the spur town) and never
+     * returns to the part before it; the spur searches for one round are independent
+     * and run in parallel, each on its thread's reusable search state.
+     *
+     * @param sourceVertex      The source town.
+     * @param destinationVertex The destination town.
+     * @param k                 The number of routes wanted.
+     * @return The routes, shortest first; fewer than k if there are no more loop-free routes.
+     */
+    public List<Route> kShortestRoutes(Town sourceVertex, Town destinationVertex, int k) {
+        List<Route> found = new ArrayList<>();
+        if (k <= 0) {
+            return found;
+        }
+        Route first = route(sourceVertex, destinationVertex);
+        if (!first.isFound()) {
+            return found;
+        }
+        found.add(first);
+
+        // Distance of every town to the destination, used to guide the spur searches
+        int target = _id(destinationVertex);
+        Search search = searches.get();
+        search.runBackward(target);
+        int[] toTarget = new int[towns.length];
+        for (int v = 0; v < towns.length; v++) {
+            toTarget[v] = search.reached(v) ? search.distance[v] : UNREACHABLE;
+        }
+
+        // Each route is only spurred from the town where it left its parent onward (Lawler)
+        List<Integer> deviations = new ArrayList<>();
+        deviations.add(0);
+        PriorityQueue<Alternative> candidates = new PriorityQueue<>();
+        Set<RoadSequence> seen = new HashSet<>();
+        seen.add(new RoadSequence(first.roadIds()));
+
+        while (found.size() < k) {
+            Route previous = found.get(found.size() - 1);
+            List<Alternative> spurs = IntStream.range(deviations.get(deviations.size() - 1), previous.getHopCount()).parallel()
+                    .mapToObj(j -> _spurRoute(found, previous, j, target, toTarget))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            for (Alternative spur : spurs) {
+                if (seen.add(new RoadSequence(spur.route.roadIds()))) {
+                    candidates.add(spur);
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            Alternative next = candidates.poll();
+            found.add(next.route);
+            deviations.add(next.deviation);
+        }
+        return found;
+    }
+
+    // Helper method to find the shortest route that follows previous up to its j-th town and
+    // then leaves it by a road no route found so far takes from the same start
+    private Alternative _spurRoute(List<Route> found, Route previous, int j, int target, int[] toTarget) {
+        int[] rootTowns = previous.townIds();
+        int[] rootRoads = previous.roadIds();
+
+        int[] avoidRoads = new int[found.size()];
+        int avoidCount = 0;
+        for (Route r : found) {
+            int[] roads = r.roadIds();
+            if (roads.length > j && _samePrefix(roads, rootRoads, j)) {
+                avoidRoads[avoidCount++] = roads[j];
+            }
+        }
+
+        Search search = searches.get();
+        search.runAvoiding(rootTowns[j], target, rootTowns, j, avoidRoads, avoidCount, toTarget);
+        if (!search.reached(target)) {
+            return null;
+        }
+
+        int spurHops = 0;
+        for (int t = target; search.predecessor[t] != NONE; t = search.predecessor[t]) {
+            spurHops++;
+        }
+        int[] townIds = Arrays.copyOf(rootTowns, j + spurHops + 1);
+        int[] roadIds = Arrays.copyOf(rootRoads, j + spurHops);
+        int rootDistance = 0;
+        for (int i = 0; i < j; i++) {
+            rootDistance += stepWeight(rootTowns[i], rootRoads[i]);
+        }
+        int at = j + spurHops;
+        townIds[at] = target;
+        for (int t = target; search.predecessor[t] != NONE; t = search.predecessor[t]) {
+            roadIds[--at] = search.predecessorRoad[t];
+            townIds[at] = search.predecessor[t];
+        }
+        return new Alternative(new Route(this, townIds, roadIds, rootDistance + search.distance[target]), j);
+    }
+
+    // Helper method to check if two road sequences start with the same length roads
+    private static boolean _samePrefix(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A candidate route for Yen's algorithm and the position of the town where it leaves
+    // the route it was spurred from. Candidates are ordered by distance, then by number of
+    // roads, then by road ids so that equally short routes always come out in the same order.
+    private static class Alternative implements Comparable<Alternative> {
+        private final Route route;
+        private final int deviation;
+
+        Alternative(Route route, int deviation) {
+            this.route = route;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public int compareTo(Alternative other) {
+            if (route.getDistance() != other.route.getDistance()) {
+                return Integer.compare(route.getDistance(), other.route.getDistance());
+            }
+            int[] a = route.roadIds();
+            int[] b = other.route.roadIds();
+            if (a.length != b.length) {
+                return Integer.compare(a.length, b.length);
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return Integer.compare(a[i], b[i]);
+                }
+            }
+            return 0;
+        }
+    }
+
+    // The roads of a route, compared by value so that a route is only queued once
+    private static class RoadSequence {
+        private final int[] roads;
+
+        RoadSequence(int[] roads) {
+            this.roads = roads;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RoadSequence && Arrays.equals(roads, ((RoadSequence) o).roads);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(roads);
+        }
+    }
+
+    // Helper method to collect the route a search found to a target id
+    private Route _route(Search search, int target) {
+        if (target == NONE || !search.reached(target)) {
+            return Route.notFound();
+        }
+
+        int hops = 0;
+        for (int t = target; search.predecessor[t] != NONE; t = search.predecessor[t]) {
+            hops++;
+        }
+        int[] townIds = new int[hops + 1];
+        int[] roadIds = new int[hops];
+        townIds[hops] = target;
+        for (int t = target; search.predecessor[t] != NONE; t = search.predecessor[t]) {
+            roadIds[--hops] = search.predecessorRoad[t];
+            townIds[hops] = search.predecessor[t];
+        }
+        return new Route(this, townIds, roadIds, search.distance[target]);
+    }
+
+    /**
+     * Applies Dijkstra's algorithm over the CSR arrays to find the shortest paths from a
+     * source town to all other towns. The result is kept for the calling thread only.
+     *
+     * @param sourceVertex The source town.
+     */
+    @Override
+    public void dijkstraShortestPath(Town sourceVertex) {
+        searches.get().run(_id(sourceVertex), NONE);
+    }
+
+    /**
+     * Gets the distance to a town found by the calling thread's last dijkstraShortestPath call.
+     *
+     * @param town The town to look up.
+     * @return The distance, or Integer.MAX_VALUE if the town was not reached.
+     */
+    public int lastDistance(Town town) {
+        int id = _id(town);
+        Search search = searches.get();
+        return id == NONE || !search.reached(id) ? UNREACHABLE : search.distance[id];
+    }
+
+    /**
+     * Computes the shortest distance between every pair of towns. Row and column i belong
+     * to the town with id i. One full Dijkstra search runs per town, spread over the
+     * common fork-join pool. The matrix needs townCount() squared ints.
+     *
+     * @return The distance matrix; unreachable pairs hold UNREACHABLE.
+     */
+    public int[][] distanceMatrix() {
+        return distanceMatrix(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the shortest distance between every pair of towns using the given pool.
+     * Row and column i belong to the town with id i.
+     *
+     * @param pool The pool that runs the searches.
+     * @return The distance matrix; unreachable pairs hold UNREACHABLE.
+     */
+    public int[][] distanceMatrix(ForkJoinPool pool) {
+        int[][] matrix = new int[towns.length][];
+        pool.submit(() -> IntStream.range(0, towns.length).parallel().forEach(source -> {
+            Search search = searches.get();
+            search.run(source, NONE);
+            int[] row = new int[towns.length];
+            for (int t = 0; t < row.length; t++) {
+                row[t] = search.reached(t) ? search.distance[t] : UNREACHABLE;
+            }
+            matrix[source] = row;
+        })).join();
+        return matrix;
+    }
+
+    // Open-addressing hash table from packed EdgeKeys to road ids, with linear probing.
+    // Built in one pass over the roads; if several roads join the same towns the lightest
+    // one is kept.
+    private class EdgeIndex {
+        private final long[] keys;
+        private final int[] roads;
+        private final int mask;
+
+        EdgeIndex() {
+            int capacity = Integer.highestOneBit(Math.max(2, roadNames.length * 2 - 1)) << 1;
+            keys = new long[capacity];
+            roads = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, NONE);
+            for (int r = 0; r < roadNames.length; r++) {
+                long key = EdgeKey.pack(roadSources[r], roadDestinations[r]);
+                int i = EdgeKey.hash(key) & mask;
+                while (keys[i] != NONE && keys[i] != key) {
+                    i = (i + 1) & mask;
+                }
+                if (keys[i] == NONE) {
+                    keys[i] = key;
+                    roads[i] = r;
+                } else if (roadWeights[r] < roadWeights[roads[i]]) {
+                    roads[i] = r;
+                }
+            }
+        }
+
+        // Returns the id of the road with the given packed key, or NONE
+        int find(long key) {
+            for (int i = EdgeKey.hash(key) & mask; keys[i] != NONE; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return roads[i];
+                }
+            }
+            return NONE;
+        }
+    }
+
+    // Dijkstra working state of one thread. Entries are only valid when their stamp matches
+    // the current epoch, so starting a new search does not have to clear the arrays.
+    private class Search {
+        private final int[] distance = new int[towns.length];
+        private final int[] predecessor = new int[towns.length];
+        private final int[] predecessorRoad = new int[towns.length];
+        private final int[] reachedStamp = new int[towns.length];
+        private final int[] settledStamp = new int[towns.length];
+        private final IntMinHeap heap = new IntMinHeap(towns.length);
+        private int[] avoidedRoadStamp;
+        private int epoch;
+
+        // Checks if an id was reached by the current search
+        boolean reached(int v) {
+            return reachedStamp[v] == epoch;
+        }
+
+        // Runs Dijkstra's algorithm from a source id with an indexed heap.
+        // When a target id is given the search stops once that id is settled.
+        void run(int source, int target) {
+            _reset();
+            _dijkstra(source, target, false, null, false);
+        }
+
+        // Runs Dijkstra's algorithm over the reverse layout, finding the distance from every
+        // id to a target id
+        void runBackward(int target) {
+            _reset();
+            _dijkstra(target, NONE, false, null, true);
+        }
+
+        // Runs a search from a source id to a target id without passing through the first
+        // townCount ids of avoidTowns or using the first roadCount ids of avoidRoads. The search
+        // is guided by toTarget, the exact distance of every town to the target in the full
+        // snapshot: avoiding towns and roads can only make paths longer, so it never
+        // overestimates and the search heads almost straight for the target.
+        void runAvoiding(int source, int target, int[] avoidTowns, int townCount, int[] avoidRoads, int roadCount,
+                int[] toTarget) {
+            _reset();
+            if (avoidedRoadStamp == null) {
+                avoidedRoadStamp = new int[roadNames.length];
+            }
+            for (int i = 0; i < townCount; i++) {
+                settledStamp[avoidTowns[i]] = epoch;
+            }
+            for (int i = 0; i < roadCount; i++) {
+                avoidedRoadStamp[avoidRoads[i]] = epoch;
+            }
+            _dijkstra(source, target, roadCount > 0, toTarget, false);
+        }
+
+        // Helper method with the Dijkstra loop shared by run, runBackward and runAvoiding. Towns
+        // already marked settled are never entered. With a potential, heap keys are the distance
+        // plus the potential and towns with an UNREACHABLE potential are skipped.
+        private void _dijkstra(int source, int target, boolean avoidRoads, int[] potential, boolean reverse) {
+            if (source == NONE || settledStamp[source] == epoch) {
+                return;
+            }
+            int[] offsets = reverse ? reverseOffsets : GraphSnapshot.this.offsets;
+            int[] targets = reverse ? reverseTargets : GraphSnapshot.this.targets;
+            int[] weights = reverse ? reverseWeights : GraphSnapshot.this.weights;
+            int[] roadIds = reverse ? reverseRoadIds : GraphSnapshot.this.roadIds;
+
+            _reach(source, 0, NONE, NONE);
+            heap.push(source, potential == null ? 0 : potential[source]);
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                settledStamp[u] = epoch;
+                if (u == target) {
+                    return;
+                }
+
+                int du = distance[u];
+                for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                    int v = targets[slot];
+                    if (settledStamp[v] == epoch || (avoidRoads && avoidedRoadStamp[roadIds[slot]] == epoch)) {
+                        continue;
+                    }
+                    if (potential != null && potential[v] == UNREACHABLE) {
+                        continue;
+                    }
+                    int dv = du + weights[slot];
+                    if (!reached(v) || dv < distance[v]) {
+                        _reach(v, dv, u, roadIds[slot]);
+                        heap.push(v, potential == null ? dv : dv + potential[v]);
+                    } else if (_ties(v, dv, u, weights[slot])) {
+                        _reach(v, dv, u, roadIds[slot]);
+                    }
+                }
+            }
+        }
+
+        // Runs an A* search from a source id to a target id. Heap keys are the distance plus
+        // the heuristic estimate; an id is pushed again whenever a shorter way to it is found.
+        void runAStar(int source, int target, Heuristic<Town> heuristic) {
+            _reset();
+            if (source == NONE || target == NONE) {
+                return;
+            }
+
+            Town destination = towns[target];
+            _reach(source, 0, NONE, NONE);
+            heap.push(source, heuristic.estimate(towns[source], destination));
+
+            while (!heap.isEmpty()) {
+                // A queued town whose key is no more than the target's distance may still lead
+                // to it on a tied route, which must be weighed as in run
+                if (reached(target) && heap.peekKey() > distance[target]) {
+                    return;
+                }
+                int u = heap.poll();
+                if (u == target) {
+                    continue;
+                }
+
+                int du = distance[u];
+                for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                    int v = targets[slot];
+                    int dv = du + weights[slot];
+                    if (!reached(v) || dv < distance[v]) {
+                        _reach(v, dv, u, roadIds[slot]);
+                        heap.push(v, dv + heuristic.estimate(towns[v], destination));
+                    } else if (_ties(v, dv, u, weights[slot])) {
+                        _reach(v, dv, u, roadIds[slot]);
+                    }
+                }
+            }
+        }
+
+        // Helper method to start a new search: empties the heap and moves to a new epoch
+        private void _reset() {
+            heap.clear();
+            if (++epoch == 0) {
+                Arrays.fill(reachedStamp, 0);
+                Arrays.fill(settledStamp, 0);
+                if (avoidedRoadStamp != null) {
+                    Arrays.fill(avoidedRoadStamp, 0);
+                }
+                epoch = 1;
+            }
+        }
+
+        // Helper method to check if reaching the reached id v from u at distance dv over a road
+        // of weight w ties its best known way and should replace it: among tied routes the one
+        // through the lower id wins, so run and runAStar return the same route. Ids follow town
+        // names, so Graph breaks ties the same way. Zero-weight roads are left out, or two ids
+        // could become each other's predecessor.
+        private boolean _ties(int v, int dv, int u, int w) {
+            return w > 0 && dv == distance[v] && u < predecessor[v];
+        }
+
+        // Helper method to record the best known way to reach an id
+        private void _reach(int v, int d, int from, int road) {
+            reachedStamp[v] = epoch;
+            distance[v] = d;
+            predecessor[v] = from;
+            predecessorRoad[v] = road;
+        }
+    }
+}
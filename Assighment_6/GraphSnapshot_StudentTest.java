@@ -0,0 +1,210 @@
+package graphs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class contains JUnit tests for the GraphSnapshot class, the compact
+ * read-only copy of a Graph.
+ * 
+ * @author Moises Merlos
+ * @date 12/03/2023
+ * 
+ */
+public class GraphSnapshot_StudentTest {
+    private Graph graph;
+    private GraphSnapshot snapshot;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        town = new Town[7];
+
+        for (int i = 1; i < 7; i++) {
+            town[i] = new Town("City_" + i);
+            graph.addVertex(town[i]);
+        }
+
+        graph.addEdge(town[1], town[2], 3, "Road_A");
+        graph.addEdge(town[1], town[3], 5, "Road_B");
+        graph.addEdge(town[2], town[4], 2, "Road_C");
+        graph.addEdge(town[3], town[4], 4, "Road_D");
+        graph.addEdge(town[4], town[5], 7, "Road_E");
+        snapshot = graph.snapshot();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+        snapshot = null;
+    }
+
+    /**
+     * Tests that the snapshot holds the same towns and roads as the graph.
+     */
+    @Test
+    public void testContents() {
+        assertEquals(6, snapshot.townCount());
+        assertEquals(5, snapshot.roadCount());
+        assertEquals(graph.vertexSet(), snapshot.vertexSet());
+        assertTrue(snapshot.containsEdge(town[4], town[2]));
+        assertFalse(snapshot.containsEdge(town[1], town[4]));
+        assertEquals(new Road(town[3], town[4], 4, "Road_D"), snapshot.getEdge(town[4], town[3]));
+        assertEquals("Road_D", snapshot.getEdge(town[4], town[3]).getName());
+        int three = snapshot.idOf(town[3]);
+        int four = snapshot.idOf(town[4]);
+        assertEquals(EdgeKey.of(three, four), EdgeKey.of(four, three));
+        assertEquals("Road_D", snapshot.getEdge(EdgeKey.of(four, three)).getName());
+        assertNull(snapshot.getEdge(EdgeKey.of(snapshot.idOf(town[1]), four)));
+        assertNull(snapshot.getEdge(EdgeKey.of(four, 99)));
+        assertNull(snapshot.getEdge(town[4], new Town("City_9")));
+        assertEquals(3, snapshot.edgesOf(town[4]).size());
+        assertTrue(snapshot.edgesOf(town[6]).isEmpty());
+    }
+
+    /**
+     * Tests that shortest paths on the snapshot match the graph.
+     */
+    @Test
+    public void testShortestPath() {
+        ArrayList<String> path = snapshot.shortestPath(town[1], town[5]);
+        assertEquals(graph.shortestPath(town[1], town[5]), path);
+        assertEquals("City_1 via Road_A to City_2 3 mi", path.get(0));
+        assertEquals("City_2 via Road_C to City_4 2 mi", path.get(1));
+        assertEquals("City_4 via Road_E to City_5 7 mi", path.get(2));
+        assertTrue(snapshot.shortestPath(town[1], town[6]).isEmpty());
+        assertTrue(snapshot.shortestPath(town[1], new Town("Nowhere")).isEmpty());
+    }
+
+    /**
+     * Tests that the snapshot is unaffected by later changes and rejects changes itself.
+     */
+    @Test
+    public void testImmutable() {
+        graph.removeVertex(town[2]);
+        assertTrue(snapshot.containsEdge(town[1], town[2]));
+
+        try {
+            snapshot.addVertex(new Town("City_7"));
+            fail("Snapshot accepted a new town");
+        } catch (UnsupportedOperationException e) {
+            assertFalse(snapshot.containsVertex(new Town("City_7")));
+        }
+    }
+
+    /**
+     * Tests the all-pairs distance matrix.
+     */
+    @Test
+    public void testDistanceMatrix() {
+        int[][] matrix = snapshot.distanceMatrix();
+        int n = snapshot.townCount();
+        assertEquals(n, matrix.length);
+
+        int one = snapshot.idOf(town[1]);
+        int four = snapshot.idOf(town[4]);
+        int five = snapshot.idOf(town[5]);
+        int six = snapshot.idOf(town[6]);
+        assertEquals(town[4], snapshot.townAt(four));
+        assertEquals(0, matrix[one][one]);
+        assertEquals(5, matrix[one][four]);
+        assertEquals(12, matrix[five][one]);
+        assertEquals(GraphSnapshot.UNREACHABLE, matrix[one][six]);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                assertEquals(matrix[i][j], matrix[j][i]);
+            }
+        }
+    }
+
+    /**
+     * Tests that delta-stepping finds the distances of Dijkstra's algorithm for small and
+     * large deltas, on one thread and on several.
+     */
+    @Test
+    public void testDeltaStepping() {
+        int[][] matrix = snapshot.distanceMatrix();
+        for (int delta : new int[] { 1, 3, 100 }) {
+            for (int threads : new int[] { 1, 3 }) {
+                try (DeltaStepping search = new DeltaStepping(snapshot, delta, threads)) {
+                    for (int i = 0; i < snapshot.townCount(); i++) {
+                        assertArrayEquals(matrix[i], search.distancesFrom(snapshot.townAt(i)));
+                    }
+                }
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (DeltaStepping search = new DeltaStepping(snapshot, 3, pool)) {
+            assertEquals(2, search.getThreads());
+            assertArrayEquals(matrix[0], search.distancesFrom(snapshot.townAt(0)));
+        }
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+        assertEquals(GraphSnapshot.UNREACHABLE, new DeltaStepping(snapshot, 2).distancesFrom(new Town("City_9"))[0]);
+
+        // Enough towns per round for the work to be split between threads
+        Graph big = new Graph();
+        Random random = new Random(3);
+        Town[] towns = new Town[5000];
+        for (int i = 0; i < towns.length; i++) {
+            towns[i] = new Town("Town_" + i);
+            big.addVertex(towns[i]);
+        }
+        for (int i = 0; i < 30000; i++) {
+            big.addEdge(towns[random.nextInt(towns.length)], towns[random.nextInt(towns.length)], random.nextInt(50), "Road_" + i);
+        }
+        GraphSnapshot bigSnapshot = big.snapshot();
+        bigSnapshot.dijkstraShortestPath(towns[0]);
+        int[] parallel = big.deltaSteppingDistances(towns[0], 1000, 4);
+        int[] bucketed = big.deltaSteppingDistances(towns[0], 5, 4);
+        for (int i = 0; i < towns.length; i++) {
+            int expected = bigSnapshot.lastDistance(bigSnapshot.townAt(i));
+            assertEquals(expected, parallel[i]);
+            assertEquals(expected, bucketed[i]);
+        }
+
+        try {
+            new DeltaStepping(snapshot, 0, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("delta"));
+        }
+    }
+
+    /**
+     * Tests that bidirectional search finds routes as long as Dijkstra's, and that a directed
+     * snapshot searches forward from the source and backward from the destination.
+     */
+    @Test
+    public void testBidirectionalRoute() {
+        assertEquals(snapshot.route(town[1], town[5]).getDistance(), snapshot.bidirectionalRoute(town[1], town[5]).getDistance());
+        assertEquals(snapshot.shortestPath(town[3], town[2]), snapshot.bidirectionalRoute(town[3], town[2]).toSteps());
+        assertEquals(0, snapshot.bidirectionalRoute(town[4], town[4]).getDistance());
+        assertFalse(snapshot.bidirectionalRoute(town[1], town[6]).isFound());
+        assertFalse(snapshot.isDirected());
+
+        Graph directed = new Graph(true);
+        directed.addEdge(town[1], town[2], 3, Road.CLOSED, "Road_A");
+        directed.addEdge(town[2], town[3], 4, 1, "Road_B");
+        directed.addEdge(town[3], town[1], 2, Road.CLOSED, "Road_C");
+        GraphSnapshot view = directed.snapshot();
+        assertTrue(view.isDirected());
+
+        Route back = view.bidirectionalRoute(town[2], town[1]);
+        assertEquals(6, back.getDistance());
+        assertEquals("City_2 via Road_B to City_3 4 mi", back.step(0));
+        assertEquals(6, view.route(town[2], town[1]).getDistance());
+        assertEquals(1, view.getEdge(town[3], town[2]).getReverseWeight());
+        assertEquals(2, view.edgesOf(town[1]).size());
+        assertEquals(2, view.kShortestRoutes(town[3], town[2], 2).size());
+        assertEquals(5, view.kShortestRoutes(town[3], town[2], 2).get(1).getDistance());
+    }
+}
@@ -3,8 +3,11 @@ package graphs;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.After;
@@ -173,6 +176,11 @@ public class Graph_StudentTest {
         assertEquals(true, graph.containsVertex(town[3]));
         graph.removeVertex(town[3]);
         assertEquals(false, graph.containsVertex(town[3]));
+
+        // Removing a town that is not in the graph leaves its version alone
+        long version = ((Graph) graph).getVersion();
+        graph.removeVertex(new Town("Nowhere"));
+        assertEquals(version, ((Graph) graph).getVersion());
     }
 
     /**
@@ -190,6 +198,32 @@ public class Graph_StudentTest {
         assertEquals(false, towns.contains(new Town("City_6")));
     }
 
+    /**
+     * Tests that vertexSet and edgeSet are shared read-only sets that are replaced
+     * once the graph changes.
+     */
+    @Test
+    public void testVertexSetAndEdgeSetViews() {
+        Set<Town> towns = graph.vertexSet();
+        Set<Road> roads = graph.edgeSet();
+        assertSame(towns, graph.vertexSet());
+        assertSame(roads, graph.edgeSet());
+
+        try {
+            towns.add(new Town("City_6"));
+            fail("vertexSet should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        graph.addVertex(new Town("City_6"));
+        assertFalse(towns.contains(new Town("City_6")));
+        assertTrue(graph.vertexSet().contains(new Town("City_6")));
+
+        graph.addEdge(town[1], new Town("City_6"), 2, "Road_6");
+        assertEquals(roads.size() + 1, graph.edgeSet().size());
+    }
+
     /**
      * Tests the shortestPath method.
      * @param  beginTown    the starting town name
@@ -223,4 +257,417 @@ public class Graph_StudentTest {
             fail("Town names are not valid");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that removing a town also removes every road touching it.
+     */
+    @Test
+    public void testRemoveVertexRemovesConnectedRoads() {
+        graph.removeVertex(town[2]);
+        assertEquals(false, graph.containsEdge(town[1], town[2]));
+        assertEquals(false, graph.containsEdge(town[4], town[2]));
+        assertEquals(1, graph.edgesOf(town[1]).size());
+        assertEquals(2, graph.edgeSet().size());
+    }
+
+    /**
+     * Tests that a road is only removed when its weight and name match.
+     */
+    @Test
+    public void testRemoveEdgeMismatch() {
+        assertNull(graph.removeEdge(town[1], town[2], 4, "Road_A"));
+        assertNull(graph.removeEdge(town[1], town[2], 3, "Road_Z"));
+        assertEquals(new Road(town[2], town[1], 3, "Road_A"), graph.removeEdge(town[2], town[1], 3, "Road_A"));
+        assertEquals(false, graph.containsEdge(town[2], town[1]));
+    }
+
+    /**
+     * Tests that back-to-back searches from different sources do not share stale state.
+     */
+    @Test
+    public void testRepeatedShortestPath() {
+        ArrayList<String> first = graph.shortestPath(town[4], town[1]);
+        assertEquals("City_4 via Road_C to City_2 2 mi", first.get(0));
+        assertEquals("City_2 via Road_A to City_1 3 mi", first.get(1));
+
+        ArrayList<String> second = graph.shortestPath(town[3], town[2]);
+        assertEquals(2, second.size());
+        assertEquals("City_3 via Road_D to City_4 4 mi", second.get(0));
+        assertEquals("City_4 via Road_C to City_2 2 mi", second.get(1));
+    }
+
+    /**
+     * Tests that an unreachable destination yields an empty path.
+     */
+    @Test
+    public void testShortestPathUnreachable() {
+        Town island = new Town("City_5");
+        graph.addVertex(island);
+        assertTrue(graph.shortestPath(town[1], island).isEmpty());
+    }
+
+    /**
+     * Tests that many threads can search the same graph at once without mixing up results.
+     */
+    @Test
+    public void testConcurrentShortestPath() throws Exception {
+        Thread[] threads = new Thread[8];
+        boolean[] correct = new boolean[threads.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                boolean ok = true;
+                for (int j = 0; j < 200; j++) {
+                    ArrayList<String> path = (id % 2 == 0)
+                            ? graph.shortestPath(town[1], town[4])
+                            : graph.shortestPath(town[3], town[2]);
+                    ok &= path.size() == 2;
+                    ok &= path.get(0).startsWith(id % 2 == 0 ? "City_1 via Road_A" : "City_3 via Road_D");
+                }
+                correct[id] = ok;
+            });
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertTrue(correct[i]);
+        }
+    }
+
+    /**
+     * Tests that A* with a straight-line heuristic finds the same path as shortestPath.
+     */
+    @Test
+    public void testAStarShortestPath() {
+        Graph mapped = new Graph();
+        Town a = new Town("City_A", 0, 0);
+        Town b = new Town("City_B", 3, 0);
+        Town c = new Town("City_C", 0, 4);
+        Town d = new Town("City_D", 3, 4);
+        mapped.addVertex(a);
+        mapped.addVertex(b);
+        mapped.addVertex(c);
+        mapped.addVertex(d);
+        mapped.addEdge(a, b, 3, "Road_AB");
+        mapped.addEdge(a, c, 4, "Road_AC");
+        mapped.addEdge(b, d, 6, "Road_BD");
+        mapped.addEdge(c, d, 3, "Road_CD");
+
+        ArrayList<String> path = mapped.aStarShortestPath(a, d, Heuristic.straightLine());
+        assertEquals(mapped.shortestPath(a, d), path);
+        assertEquals("City_A via Road_AC to City_C 4 mi", path.get(0));
+        assertEquals("City_C via Road_CD to City_D 3 mi", path.get(1));
+
+        assertEquals(graph.shortestPath(town[1], town[4]), graph.aStarShortestPath(town[1], town[4], Heuristic.straightLine()));
+        assertTrue(graph.aStarShortestPath(town[1], new Town("City_9"), Heuristic.none()).isEmpty());
+    }
+
+    /**
+     * Tests that A* picks the same route as shortestPath when two routes are equally short,
+     * although the heuristic draws it toward the other one.
+     */
+    @Test
+    public void testAStarShortestPathTie() {
+        Graph tied = new Graph();
+        Town s = new Town("S", 0, 0);
+        Town x = new Town("X", 1, 3);
+        Town y = new Town("Y", 1, 0);
+        Town t = new Town("T", 2, 0);
+        tied.addEdge(s, x, 5, "r1");
+        tied.addEdge(x, t, 5, "r2");
+        tied.addEdge(s, y, 5, "r3");
+        tied.addEdge(y, t, 5, "r4");
+
+        ArrayList<String> path = tied.shortestPath(s, t);
+        assertEquals("S via r1 to X 5 mi", path.get(0));
+        assertEquals("X via r2 to T 5 mi", path.get(1));
+        assertEquals(path, tied.aStarShortestPath(s, t, Heuristic.straightLine()));
+        assertEquals(path, tied.aStarShortestPath(s, t, Heuristic.none()));
+        assertEquals(path, tied.shortestPathTree(s).pathTo(t));
+
+        GraphSnapshot view = tied.snapshot();
+        assertEquals(path, view.shortestPath(s, t));
+        assertEquals(path, view.aStarShortestPath(s, t, Heuristic.straightLine()));
+    }
+
+    /**
+     * Tests a longer path where the searches from both ends meet in the middle, next to a
+     * direct road that looks short from either end but is longer overall.
+     */
+    @Test
+    public void testShortestPathLongChain() {
+        Town[] chain = new Town[7];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = new Town("Stop_" + i);
+            graph.addVertex(chain[i]);
+        }
+        for (int i = 1; i < chain.length; i++) {
+            graph.addEdge(chain[i - 1], chain[i], 2, "Chain_" + i);
+        }
+        graph.addEdge(chain[0], chain[6], 13, "Bypass");
+
+        ArrayList<String> path = graph.shortestPath(chain[0], chain[6]);
+        assertEquals(6, path.size());
+        assertEquals("Stop_0 via Chain_1 to Stop_1 2 mi", path.get(0));
+        assertEquals("Stop_3 via Chain_4 to Stop_4 2 mi", path.get(3));
+        assertEquals("Stop_5 via Chain_6 to Stop_6 2 mi", path.get(5));
+
+        graph.addEdge(chain[0], chain[6], 11, "Bypass");
+        path = graph.shortestPath(chain[6], chain[0]);
+        assertEquals(1, path.size());
+        assertEquals("Stop_6 via Bypass to Stop_0 11 mi", path.get(0));
+        assertTrue(graph.shortestPath(chain[2], chain[2]).isEmpty());
+    }
+
+    /**
+     * Tests that a repaired shortest-path tree matches a fresh search after a road gets
+     * longer, a road is added and a road is removed, and that the old tree is unchanged.
+     */
+    @Test
+    public void testRepairShortestPathTree() {
+        Graph g = (Graph) graph;
+        ShortestPathTree tree = g.shortestPathTree(town[1]);
+        assertEquals(5, tree.getDistance(town[4]));
+
+        Road roadC = g.setRoadWeight(town[2], town[4], 10);
+        ShortestPathTree repaired = g.repairShortestPathTree(tree, Collections.singletonList(roadC));
+        assertEquals(5, tree.getDistance(town[4]));
+        assertEquals("City_2 via Road_C to City_4 2 mi", tree.pathTo(town[4]).get(1));
+        assertEquals(9, repaired.getDistance(town[4]));
+        assertEquals("City_3 via Road_D to City_4 4 mi", repaired.pathTo(town[4]).get(1));
+
+        Road roadE = g.addEdge(town[1], town[4], 1, "Road_E");
+        Road roadA = g.removeEdge(town[1], town[2], 3, "Road_A");
+        repaired = g.repairShortestPathTree(repaired, Arrays.asList(roadE, roadA));
+        ShortestPathTree fresh = g.shortestPathTree(town[1]);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(fresh.getDistance(town[i]), repaired.getDistance(town[i]));
+        }
+        assertEquals(11, repaired.getDistance(town[2]));
+        assertEquals(2, repaired.pathTo(town[2]).size());
+    }
+
+    /**
+     * Tests that a route holds the towns and roads of the shortest path and formats
+     * them like shortestPath.
+     */
+    @Test
+    public void testRoute() {
+        Graph g = (Graph) graph;
+        Route route = g.route(town[3], town[2]);
+        assertEquals(6, route.getDistance());
+        assertEquals(2, route.getHopCount());
+        assertEquals(town[4], route.getTown(1));
+        assertEquals("City_4 via Road_C to City_2 2 mi", route.step(1));
+        assertEquals(g.shortestPath(town[3], town[2]), route.toSteps());
+
+        // A route keeps the weights it was found with when a road changes afterwards
+        g.setRoadWeight(town[2], town[4], 50);
+        assertEquals("City_4 via Road_C to City_2 2 mi", route.step(1));
+        assertEquals(2, route.getRoadWeight(1));
+
+        g.removeVertex(town[4]);
+        assertEquals(8, g.route(town[3], town[2]).getDistance());
+
+        Town island = new Town("City_9");
+        g.addVertex(island);
+        assertFalse(g.route(town[3], island).isFound());
+        assertEquals(Integer.MAX_VALUE, g.route(town[3], island).getDistance());
+    }
+
+    /**
+     * Tests that the k shortest paths come out shortest first, without loops, and stop
+     * when there are no more paths.
+     */
+    @Test
+    public void testKShortestPaths() {
+        graph.addEdge(town[2], town[3], 1, "Road_E");
+
+        ArrayList<ArrayList<String>> paths = ((Graph) graph).kShortestPaths(town[1], town[4], 10);
+        assertEquals(4, paths.size());
+        assertEquals(graph.shortestPath(town[1], town[4]), paths.get(0));
+        assertEquals(3, paths.get(1).size());
+        assertEquals(3, paths.get(2).size());
+        assertTrue(paths.contains(new ArrayList<>(Arrays.asList("City_1 via Road_A to City_2 3 mi",
+                "City_2 via Road_E to City_3 1 mi", "City_3 via Road_D to City_4 4 mi"))));
+        assertTrue(paths.contains(new ArrayList<>(Arrays.asList("City_1 via Road_B to City_3 5 mi",
+                "City_3 via Road_E to City_2 1 mi", "City_2 via Road_C to City_4 2 mi"))));
+        assertEquals("City_1 via Road_B to City_3 5 mi", paths.get(3).get(0));
+        assertEquals(2, paths.get(3).size());
+
+        assertEquals(2, ((Graph) graph).kShortestPaths(town[1], town[4], 2).size());
+        assertTrue(((Graph) graph).kShortestPaths(town[1], new Town("City_9"), 3).isEmpty());
+    }
+
+    /**
+     * Tests that Kruskal's and Prim's algorithms agree on the lightest roads that keep
+     * every town connected, also when the graph falls apart into several regions.
+     */
+    @Test
+    public void testMinimumSpanningTree() {
+        Graph g = (Graph) graph;
+        List<Road> kruskal = g.minimumSpanningTree();
+        assertEquals(3, kruskal.size());
+        assertEquals("Road_C", kruskal.get(0).getName());
+        assertEquals("Road_A", kruskal.get(1).getName());
+        assertEquals("Road_D", kruskal.get(2).getName());
+        assertEquals(new HashSet<>(kruskal), new HashSet<>(g.primMinimumSpanningTree()));
+
+        g.removeEdge(town[2], town[4], 2, "Road_C");
+        g.addVertex(new Town("City_9"));
+        kruskal = g.minimumSpanningTree();
+        assertEquals(3, kruskal.size());
+        assertEquals(12, kruskal.get(0).getWeight() + kruskal.get(1).getWeight() + kruskal.get(2).getWeight());
+        assertEquals(new HashSet<>(kruskal), new HashSet<>(g.primMinimumSpanningTree()));
+
+        g.removeEdge(town[1], town[3], 5, "Road_B");
+        assertEquals(2, g.minimumSpanningTree().size());
+        assertEquals(2, g.primMinimumSpanningTree().size());
+    }
+
+    /**
+     * Tests that the connected components follow removals and that shortestPath gives up
+     * right away for towns in different components.
+     */
+    @Test
+    public void testConnectedComponents() {
+        Graph g = (Graph) graph;
+        assertEquals(1, g.connectedComponents().getComponentCount());
+        assertTrue(g.isConnected(town[1], town[4]));
+
+        g.removeEdge(town[1], town[2], 3, "Road_A");
+        g.removeEdge(town[1], town[3], 5, "Road_B");
+        Town island = new Town("City_9");
+        g.addVertex(island);
+
+        ConnectedComponents components = g.connectedComponents();
+        assertEquals(3, components.getComponentCount());
+        assertFalse(g.isConnected(town[1], town[4]));
+        assertTrue(g.isConnected(town[2], town[3]));
+        assertFalse(g.isConnected(town[2], island));
+        assertTrue(g.isConnected(island, island));
+        assertFalse(g.isConnected(town[2], new Town("City_10")));
+        assertEquals(3, components.getComponentSize(components.componentOf(town[4])));
+        assertEquals(-1, components.componentOf(null));
+
+        assertTrue(g.shortestPath(town[1], town[4]).isEmpty());
+        assertFalse(g.snapshot().route(town[2], island).isFound());
+        assertEquals(6, g.route(town[2], town[3]).getDistance());
+    }
+
+    /**
+     * Tests that the registry interns towns by name and keeps each name's id when the town
+     * is removed and added again, and that searches still work after the round trip.
+     */
+    @Test
+    public void testTownRegistry() {
+        Graph g = (Graph) graph;
+        TownRegistry registry = g.registry();
+        assertEquals(4, registry.size());
+        assertSame(town[2], registry.intern("City_2"));
+        assertSame(town[2], registry.intern(new Town("City_2")));
+        assertNull(registry.find("City_9"));
+        assertEquals(-1, registry.idOf(new Town("City_9")));
+
+        int id = registry.idOf(town[3]);
+        assertEquals(id, registry.idOf(new Town("City_3")));
+        assertSame(town[3], registry.townAt(id));
+        assertEquals(new Town("City_3").hashCode(), town[3].hashCode());
+
+        assertTrue(g.removeVertex(town[3]));
+        Town again = new Town("City_3");
+        assertTrue(g.addVertex(again));
+        g.addEdge(again, town[4], 2, "Road_E");
+        assertEquals(4, registry.size());
+        assertEquals(id, registry.idOf(again));
+        assertSame(again, registry.townAt(id));
+
+        assertEquals(Arrays.asList("City_2 via Road_C to City_4 2 mi", "City_4 via Road_E to City_3 2 mi"),
+                g.shortestPath(town[2], again));
+        assertEquals(4, g.shortestPathTree(town[2]).getDistance(new Town("City_3")));
+
+        // A town already in one graph joins another as the same instance, with its own id there
+        Graph other = new Graph();
+        other.addVertex(new Town("City_9"));
+        other.addVertex(town[1]);
+        assertSame(town[1], other.getVertex("City_1"));
+        assertEquals(1, other.registry().idOf(town[1]));
+        assertSame(town[1], g.getVertex("City_1"));
+        assertEquals(id, registry.idOf(new Town("City_3")));
+        assertEquals(5, g.route(town[1], town[4]).getDistance());
+    }
+
+    /**
+     * Tests that roads with different names between the same towns are kept side by side,
+     * that the lightest one is used for routing, and that each can be found and removed.
+     */
+    @Test
+    public void testParallelRoads() {
+        Graph g = (Graph) graph;
+        Road local = g.addEdge(town[1], town[2], 7, "Local_A");
+        Road highway = g.addEdge(town[2], town[1], 1, "Highway_A");
+        assertEquals(6, g.edgeSet().size());
+        assertEquals(Arrays.asList(highway, new Road(town[1], town[2], 3, "Road_A"), local), g.getEdges(town[1], town[2]));
+        assertSame(highway, g.getEdge(town[1], town[2]));
+        assertSame(local, g.getEdge(town[2], town[1], "Local_A"));
+        assertNull(g.getEdge(town[1], town[2], "Road_B"));
+        assertEquals(4, g.edgesOf(town[2]).size());
+        assertEquals(Arrays.asList("City_2 via Highway_A to City_1 1 mi"), g.shortestPath(town[2], town[1]));
+        assertEquals(highway, g.snapshot().getEdge(town[1], town[2]));
+
+        // A road with the same name replaces the old one
+        Road faster = g.addEdge(town[1], town[2], 6, "Local_A");
+        assertEquals(6, g.edgeSet().size());
+        assertSame(faster, g.getEdge(town[1], town[2], "Local_A"));
+
+        assertNull(g.removeEdge(town[1], town[2], 7, "Local_A"));
+        assertSame(highway, g.removeEdge(town[1], town[2], 1, "Highway_A"));
+        assertEquals("Road_A", g.getEdge(town[1], town[2]).getName());
+        assertEquals(3, g.route(town[2], town[1]).getDistance());
+
+        g.setRoadWeight(town[1], town[2], 10);
+        assertSame(faster, g.getEdge(town[1], town[2]));
+        assertEquals(6, g.route(town[2], town[1]).getDistance());
+
+        g.removeVertex(town[1]);
+        assertFalse(g.containsEdge(town[2], town[1]));
+        assertTrue(g.getEdges(town[1], town[2]).isEmpty());
+        assertEquals(2, g.edgeSet().size());
+    }
+
+    /**
+     * Tests that a directed graph only takes roads in a direction they are open, at the
+     * weight for that direction, and that undirected graphs refuse directed roads.
+     */
+    @Test
+    public void testDirectedGraph() {
+        Graph g = new Graph(true);
+        assertTrue(g.isDirected());
+        assertFalse(((Graph) graph).isDirected());
+
+        g.addEdge(town[1], town[2], 3, Road.CLOSED, "Main_St");
+        g.addEdge(town[2], town[3], 2, 9, "Hill_Rd");
+        g.addEdge(town[3], town[1], 4, "Ring_Rd");
+
+        assertEquals(4, g.route(town[1], town[3]).getDistance());
+        assertEquals(Arrays.asList("City_3 via Ring_Rd to City_1 4 mi", "City_1 via Main_St to City_2 3 mi"),
+                g.shortestPath(town[3], town[2]));
+        assertEquals(6, g.shortestPathTree(town[2]).getDistance(town[1]));
+        assertEquals(2, g.aStarShortestPath(town[3], town[2], (a, b) -> 0).size());
+
+        // With Hill_Rd one-way toward it, no road can be taken out of City_2
+        g.addEdge(town[3], town[2], 9, Road.CLOSED, "Hill_Rd");
+        assertFalse(g.route(town[2], town[1]).isFound());
+        assertTrue(g.isConnected(town[2], town[1]));
+        assertEquals(3, g.edgeSet().size());
+
+        try {
+            ((Graph) graph).addEdge(town[1], town[2], 3, Road.CLOSED, "Main_St");
+            fail("An undirected graph accepted a one-way road");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
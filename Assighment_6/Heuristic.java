@@ -0,0 +1,52 @@
+package graphs;
+
+/**
+ * A lower-bound estimate of the remaining distance from a vertex to a destination,
+ * used to steer A* searches toward the destination. The estimate must be admissible:
+ * it may never exceed the true shortest distance, or the returned path may not be
+ * the shortest one.
+ *
+ * @param <V> the vertex type
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+@FunctionalInterface
+public interface Heuristic<V> {
+
+    /**
+     * Estimates the distance from a vertex to the destination.
+     *
+     * @param vertex      the vertex the search is at
+     * @param destination the destination vertex
+     * @return a lower bound on the distance, never negative
+     */
+    public int estimate(V vertex, V destination);
+
+    /**
+     * A heuristic that always estimates 0. A* with it explores the same towns as Dijkstra.
+     *
+     * @param <V> the vertex type
+     * @return the zero heuristic
+     */
+    public static <V> Heuristic<V> none() {
+        return (vertex, destination) -> 0;
+    }
+
+    /**
+     * A heuristic using the straight-line distance between town coordinates, rounded down.
+     * It is admissible as long as no road is shorter than the straight line between its
+     * towns. Towns without coordinates are estimated at 0.
+     *
+     * @return the straight-line heuristic
+     */
+    public static Heuristic<Town> straightLine() {
+        return (vertex, destination) -> {
+            if (!vertex.hasCoordinates() || !destination.hasCoordinates()) {
+                return 0;
+            }
+            return (int) Math.floor(vertex.distanceTo(destination));
+        };
+    }
+}
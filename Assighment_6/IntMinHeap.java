@@ -0,0 +1,144 @@
+package graphs;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of dense int ids ordered by int keys. Supports
+ * decrease-key, so each id is in the heap at most once and no entry objects
+ * are allocated while searching.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+class IntMinHeap {
+
+    private final int[] heap;      // Ids in heap order
+    private final int[] position;  // Index of each id in heap, or -1 when absent
+    private final int[] keys;      // Current key of each id
+    private int count;             // Number of ids in the heap
+
+    /**
+     * Constructs an empty heap for ids in the range [0, capacity).
+     *
+     * @param capacity The number of distinct ids the heap can hold.
+     */
+    IntMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Checks if the heap is empty.
+     *
+     * @return true if there are no ids in the heap, false otherwise.
+     */
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Gets the number of ids in the heap.
+     *
+     * @return The number of ids in the heap.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Removes every id from the heap. Only the ids actually present are touched.
+     */
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            position[heap[i]] = -1;
+        }
+        count = 0;
+    }
+
+    /**
+     * Inserts an id with the given key, or lowers its key if it is already in the heap
+     * with a larger one.
+     *
+     * @param id  The id to insert or update.
+     * @param key The new key.
+     */
+    void push(int id, int key) {
+        int i = position[id];
+        if (i < 0) {
+            i = count++;
+            heap[i] = id;
+            position[id] = i;
+        } else if (key >= keys[id]) {
+            return;
+        }
+        keys[id] = key;
+        _siftUp(i);
+    }
+
+    /**
+     * Gets the smallest key in the heap without removing it.
+     *
+     * @return The smallest key.
+     */
+    int peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes and returns the id with the smallest key.
+     *
+     * @return The id with the smallest key.
+     */
+    int poll() {
+        int min = heap[0];
+        position[min] = -1;
+        count--;
+        if (count > 0) {
+            heap[0] = heap[count];
+            position[heap[0]] = 0;
+            _siftDown(0);
+        }
+        return min;
+    }
+
+    // Helper method to move the id at index i up until its parent is no larger
+    private void _siftUp(int i) {
+        int id = heap[i];
+        int key = keys[id];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        position[id] = i;
+    }
+
+    // Helper method to move the id at index i down until its children are no smaller
+    private void _siftDown(int i) {
+        int id = heap[i];
+        int key = keys[id];
+        int half = count >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < count && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = id;
+        position[id] = i;
+    }
+}
@@ -0,0 +1,165 @@
+package graphs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets, in the
+ * style of HdrHistogram: values below 128 get a bucket each, and every
+ * power-of-two range above that is split into 128 equal buckets, so a
+ * percentile is reported within 1% of the true value whatever its magnitude.
+ * Values up to 2^40 ns (about 18 minutes) fit in about 4,400 buckets; larger
+ * values are counted in the last bucket, though the maximum stays exact.
+ *
+ * Recording is lock-free and safe from any thread. Reading while other
+ * threads record sees some of their values and not others; take a copy for
+ * figures that agree with each other.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long HIGHEST_TRACKABLE = (1L << 40) - 1;
+    private static final int BUCKETS = _index(HIGHEST_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(_index(Math.min(value, HIGHEST_TRACKABLE)));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the largest latency recorded.
+     *
+     * @return The maximum in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the latencies recorded.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Gets the latency at a percentile: the smallest value that at least the given
+     * percentage of the recorded latencies do not exceed, rounded up to the top of
+     * its bucket.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in nanoseconds, or 0 if nothing was recorded.
+     * @throws IllegalArgumentException if the percentile is outside 0 to 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // The last bucket also holds every value too large to track
+                return i == BUCKETS - 1 ? getMax() : Math.min(_highestInBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Copies the histogram, so its figures no longer change as latencies are recorded.
+     *
+     * @return A new histogram with the same contents.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c != 0) {
+                copy.counts.set(i, c);
+            }
+        }
+        copy.sum.add(sum.sum());
+        copy.max.accumulate(max.get());
+        return copy;
+    }
+
+    /**
+     * Removes every recorded latency.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    // Helper method to find the bucket of a value: values below SUB_BUCKETS are their own
+    // bucket; above that, the bits below the top SUB_BUCKET_BITS + 1 are dropped and the
+    // remaining sub-bucket is offset by the number of bits dropped
+    private static int _index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    // Helper method to find the largest value that falls in a bucket
+    private static long _highestInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,184 @@
+package graphs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of loading a road file: how much was read and added, how long it
+ * took, and every line that could not be used together with its line number.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class LoadReport {
+
+    private final long bytes;
+    private final long nanos;
+    private final int lines;
+    private final int townsAdded;
+    private final int roadsAdded;
+    private final List<Problem> problems;
+
+    /**
+     * Constructs a report.
+     *
+     * @param bytes      the size of the file in bytes
+     * @param nanos      the time the load took, in nanoseconds
+     * @param lines      the number of lines read
+     * @param townsAdded the number of new towns added to the graph
+     * @param roadsAdded the number of roads added to the graph
+     * @param problems   the rejected lines, in line order
+     */
+    LoadReport(long bytes, long nanos, int lines, int townsAdded, int roadsAdded, List<Problem> problems) {
+        this.bytes = bytes;
+        this.nanos = nanos;
+        this.lines = lines;
+        this.townsAdded = townsAdded;
+        this.roadsAdded = roadsAdded;
+        this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return the number of bytes read
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the time the load took.
+     *
+     * @return the load time in milliseconds
+     */
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Gets the load throughput.
+     *
+     * @return the number of megabytes (10^6 bytes) read per second
+     */
+    public double getMegabytesPerSecond() {
+        return nanos == 0 ? 0 : bytes / 1e6 / (nanos / 1e9);
+    }
+
+    /**
+     * Gets the number of lines read, blank lines included.
+     *
+     * @return the number of lines
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Gets the number of towns that were not in the graph before the load.
+     *
+     * @return the number of towns added
+     */
+    public int getTownsAdded() {
+        return townsAdded;
+    }
+
+    /**
+     * Gets the number of roads added to the graph.
+     *
+     * @return the number of roads added
+     */
+    public int getRoadsAdded() {
+        return roadsAdded;
+    }
+
+    /**
+     * Gets the lines that were rejected.
+     *
+     * @return the problems, in line order
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Checks if every non-blank line was loaded.
+     *
+     * @return true if no line was rejected, false otherwise
+     */
+    public boolean isClean() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * Returns a one-line summary of the load.
+     *
+     * @return a summary of the report
+     */
+    @Override
+    public String toString() {
+        return String.format("%d lines, %d towns and %d roads added, %d problems, %.1f ms (%.1f MB/s)",
+                lines, townsAdded, roadsAdded, problems.size(), getMillis(), getMegabytesPerSecond());
+    }
+
+    /**
+     * A line of the road file that was rejected.
+     */
+    public static class Problem {
+        private final int lineNumber;
+        private final String line;
+        private final String message;
+
+        /**
+         * Constructs a problem.
+         *
+         * @param lineNumber the 1-based number of the line
+         * @param line       the text of the line
+         * @param message    why the line was rejected
+         */
+        Problem(int lineNumber, String line, String message) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Gets the line number.
+         *
+         * @return the 1-based number of the rejected line
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Gets the text of the line.
+         *
+         * @return the rejected line
+         */
+        public String getLine() {
+            return line;
+        }
+
+        /**
+         * Gets the reason the line was rejected.
+         *
+         * @return the message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the problem as "line N: message: text".
+         *
+         * @return a description of the problem
+         */
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ": " + message + ": " + line;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package graphs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A size-bounded, least-recently-used cache of shortest-path trees keyed by source
+ * town. Every entry belongs to one graph version; as soon as a lookup sees a newer
+ * version the whole cache is dropped, unless the change was passed to repair, which
+ * updates the trees instead. Hit, miss, eviction, invalidation and repair counts are
+ * kept so the capacity can be tuned.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class PathCache {
+
+    private final int capacity;                        // Maximum number of cached trees
+    private final Map<Town, ShortestPathTree> trees;   // Cached trees in access order
+    private long version;                              // Graph version the cached trees belong to
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long repairs;
+
+    /**
+     * Constructs an empty cache holding at most the given number of trees.
+     *
+     * @param capacity The maximum number of trees; 0 disables caching.
+     */
+    public PathCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        trees = new LinkedHashMap<Town, ShortestPathTree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Town, ShortestPathTree> eldest) {
+                if (size() > PathCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up the tree for a source town.
+     *
+     * @param source       The source town.
+     * @param graphVersion The current version of the graph.
+     * @return The cached tree, or null if there is none for this version.
+     */
+    public synchronized ShortestPathTree get(Town source, long graphVersion) {
+        _checkVersion(graphVersion);
+        ShortestPathTree tree = trees.get(source);
+        if (tree == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return tree;
+    }
+
+    /**
+     * Stores the tree for a source town if it still belongs to the current graph version.
+     *
+     * @param source       The source town.
+     * @param tree         The shortest-path tree rooted at the source town.
+     * @param graphVersion The graph version the tree was computed at.
+     */
+    public synchronized void put(Town source, ShortestPathTree tree, long graphVersion) {
+        if (capacity == 0 || source == null) {
+            return;
+        }
+        _checkVersion(graphVersion);
+        if (graphVersion == version) {
+            trees.put(source, tree);
+        }
+    }
+
+    /**
+     * Carries the cache over a change to the graph by repairing every cached tree instead
+     * of dropping it. If the cache does not hold the trees of the version just before the
+     * change, it is dropped as usual.
+     *
+     * @param oldVersion The graph version before the change.
+     * @param newVersion The graph version after the change.
+     * @param repair     Turns a tree of the old version into the tree of the new version.
+     */
+    public synchronized void repair(long oldVersion, long newVersion, UnaryOperator<ShortestPathTree> repair) {
+        if (version != oldVersion || newVersion < oldVersion) {
+            _checkVersion(newVersion);
+            return;
+        }
+        for (Map.Entry<Town, ShortestPathTree> entry : trees.entrySet()) {
+            entry.setValue(repair.apply(entry.getValue()));
+            repairs++;
+        }
+        version = newVersion;
+    }
+
+    // Helper method to drop every tree once the graph has moved past their version
+    private void _checkVersion(long graphVersion) {
+        if (graphVersion > version) {
+            if (!trees.isEmpty()) {
+                invalidations++;
+                trees.clear();
+            }
+            version = graphVersion;
+        }
+    }
+
+    /**
+     * Removes every cached tree.
+     */
+    public synchronized void clear() {
+        trees.clear();
+    }
+
+    /**
+     * Gets the maximum number of cached trees.
+     *
+     * @return The capacity of the cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of trees currently cached.
+     *
+     * @return The number of cached trees.
+     */
+    public synchronized int size() {
+        return trees.size();
+    }
+
+    /**
+     * Gets the number of lookups that found a tree.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that found no tree.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of trees pushed out to stay within the capacity.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of times the cache was dropped because the graph changed.
+     *
+     * @return The invalidation count.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Gets the number of trees carried over a graph change by repair.
+     *
+     * @return The repair count.
+     */
+    public synchronized long getRepairs() {
+        return repairs;
+    }
+
+    /**
+     * Returns a summary of the cache counters.
+     *
+     * @return A string with the size, capacity and counters of the cache.
+     */
+    @Override
+    public synchronized String toString() {
+        return "PathCache " + trees.size() + "/" + capacity + " hits=" + hits + " misses=" + misses
+                + " evictions=" + evictions + " invalidations=" + invalidations + " repairs=" + repairs;
+    }
+}
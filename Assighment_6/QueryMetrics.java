@@ -0,0 +1,204 @@
+package graphs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the route queries answered by a TownGraphManager: how many there
+ * were, how long each took, and how much search work they did, counted as
+ * towns settled, roads relaxed and heap operations. A query answered from the
+ * path cache did no search work of its own.
+ *
+ * Metrics are off by default. While they are off a query only reads one
+ * volatile flag; while they are on it also reads the clock and the search
+ * counters of its thread twice. Recording is safe from any number of threads.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class QueryMetrics {
+
+    private volatile boolean enabled;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+    private final LongAdder relaxed = new LongAdder();
+    private final LongAdder heapOperations = new LongAdder();
+
+    /**
+     * Checks if queries are being measured.
+     *
+     * @return true if metrics are enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the measuring of queries on or off. The figures gathered so far are kept.
+     *
+     * @param enabled true to measure queries.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records one query.
+     *
+     * @param nanos  The time the query took, in nanoseconds.
+     * @param counts The search work the query did.
+     */
+    void record(long nanos, SearchCounts counts) {
+        latency.record(nanos);
+        if (counts.heapOperations > 0) {
+            searches.increment();
+            settled.add(counts.settled);
+            relaxed.add(counts.relaxed);
+            heapOperations.add(counts.heapOperations);
+        }
+    }
+
+    /**
+     * Discards every figure gathered so far.
+     */
+    public void reset() {
+        latency.reset();
+        searches.reset();
+        settled.reset();
+        relaxed.reset();
+        heapOperations.reset();
+    }
+
+    /**
+     * Takes a snapshot of the figures gathered so far. Queries finishing while the
+     * snapshot is taken may be counted in some figures and not yet in others.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(latency.copy(), searches.sum(), settled.sum(), relaxed.sum(), heapOperations.sum());
+    }
+
+    /**
+     * The figures of a QueryMetrics at one moment.
+     */
+    public static final class Snapshot {
+
+        private final LatencyHistogram latency;
+        private final long searches;
+        private final long settled;
+        private final long relaxed;
+        private final long heapOperations;
+
+        private Snapshot(LatencyHistogram latency, long searches, long settled, long relaxed, long heapOperations) {
+            this.latency = latency;
+            this.searches = searches;
+            this.settled = settled;
+            this.relaxed = relaxed;
+            this.heapOperations = heapOperations;
+        }
+
+        /**
+         * Gets the number of queries measured.
+         *
+         * @return The number of queries.
+         */
+        public long getQueries() {
+            return latency.getCount();
+        }
+
+        /**
+         * Gets the number of measured queries that ran a search, rather than being
+         * answered from the path cache or without searching at all.
+         *
+         * @return The number of searches.
+         */
+        public long getSearches() {
+            return searches;
+        }
+
+        /**
+         * Gets the number of towns settled by all measured queries.
+         *
+         * @return The total settled.
+         */
+        public long getSettled() {
+            return settled;
+        }
+
+        /**
+         * Gets the number of roads relaxed by all measured queries.
+         *
+         * @return The total relaxed.
+         */
+        public long getRelaxed() {
+            return relaxed;
+        }
+
+        /**
+         * Gets the number of heap operations done by all measured queries.
+         *
+         * @return The total heap operations.
+         */
+        public long getHeapOperations() {
+            return heapOperations;
+        }
+
+        /**
+         * Gets the mean number of towns settled by a query that ran a search.
+         *
+         * @return The mean, or 0 if no query ran a search.
+         */
+        public double getMeanSettled() {
+            return searches == 0 ? 0 : (double) settled / searches;
+        }
+
+        /**
+         * Gets the mean number of roads relaxed by a query that ran a search.
+         *
+         * @return The mean, or 0 if no query ran a search.
+         */
+        public double getMeanRelaxed() {
+            return searches == 0 ? 0 : (double) relaxed / searches;
+        }
+
+        /**
+         * Gets the latency of queries at a percentile, such as 50, 99 or 99.9.
+         *
+         * @param percentile The percentile, from 0 to 100.
+         * @return The latency in nanoseconds, within 1%, or 0 if no query was measured.
+         */
+        public long getLatencyAtPercentile(double percentile) {
+            return latency.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Gets the mean latency of queries.
+         *
+         * @return The mean in nanoseconds, or 0 if no query was measured.
+         */
+        public double getMeanLatency() {
+            return latency.getMean();
+        }
+
+        /**
+         * Gets the latency of the slowest query.
+         *
+         * @return The maximum in nanoseconds, or 0 if no query was measured.
+         */
+        public long getMaxLatency() {
+            return latency.getMax();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d queries (%d searches), latency us p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f,"
+                    + " per search settled=%.1f relaxed=%.1f heap ops=%.1f",
+                    getQueries(), searches, getLatencyAtPercentile(50) / 1e3, getLatencyAtPercentile(90) / 1e3,
+                    getLatencyAtPercentile(99) / 1e3, getLatencyAtPercentile(99.9) / 1e3, getMaxLatency() / 1e3,
+                    getMeanSettled(), getMeanRelaxed(), searches == 0 ? 0 : (double) heapOperations / searches);
+        }
+    }
+}
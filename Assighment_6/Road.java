@@ -1,7 +1,14 @@
 package graphs;
 
+import java.util.Objects;
+
 /**
  * Represents a road connecting two towns with a specific weight.
+ *
+ * A road is two-way with the same weight in both directions unless it is given
+ * a reverse weight: the weight of travelling from the destination back to the
+ * source, or CLOSED for a one-way road. Only a directed Graph looks at the
+ * reverse weight; everywhere else a road is travelled at its weight.
  * 
  * @author Moises Merlos
  * @date 12/03/2023
@@ -9,10 +16,18 @@ package graphs;
  */
 public class Road implements Comparable<Road> {
 
+    /** Reverse weight of a one-way road, which cannot be taken from its destination. */
+    public static final int CLOSED = -1;
+
+    // Reverse weight of a two-way road that costs the same in both directions
+    private static final int SAME = Integer.MIN_VALUE;
+
     private Town source;       // The source town of the road
     private Town destination;  // The destination town of the road
     private int weight;        // The weight or distance of the road
+    private int reverseWeight; // Weight from destination to source, CLOSED, or SAME as weight
     private String name;       // The name of the road
+    private int hash;          // Cached hashCode; 0 until computed or after a town changes
 
     /**
      * Constructs a road with specified source, destination, weight, and name.
@@ -26,9 +41,24 @@ public class Road implements Comparable<Road> {
         this.source = source;
         this.destination = destination;
         this.weight = weight;
+        this.reverseWeight = SAME;
         this.name = name;
     }
 
+    /**
+     * Constructs a road with a different weight in each direction.
+     *
+     * @param source        The source town.
+     * @param destination   The destination town.
+     * @param weight        The weight from the source to the destination.
+     * @param reverseWeight The weight from the destination to the source, or CLOSED for a one-way road.
+     * @param name          The name of the road.
+     */
+    public Road(Town source, Town destination, int weight, int reverseWeight, String name) {
+        this(source, destination, weight, name);
+        setReverseWeight(reverseWeight);
+    }
+
     /**
      * Constructs a road with specified source, destination, and name. Default weight is 1.
      *
@@ -56,6 +86,7 @@ public class Road implements Comparable<Road> {
      */
     public void setSource(Town source) {
         this.source = source;
+        hash = 0;
     }
 
     /**
@@ -74,6 +105,7 @@ public class Road implements Comparable<Road> {
      */
     public void setDestination(Town destination) {
         this.destination = destination;
+        hash = 0;
     }
 
     /**
@@ -85,6 +117,56 @@ public class Road implements Comparable<Road> {
         return weight;
     }
 
+    /**
+     * Gets the weight of travelling the road from its destination back to its source.
+     *
+     * @return The reverse weight; the weight for a two-way road with one weight, or CLOSED for a one-way road.
+     */
+    public int getReverseWeight() {
+        return reverseWeight == SAME ? weight : reverseWeight;
+    }
+
+    /**
+     * Sets the weight of travelling the road from its destination back to its source.
+     *
+     * @param reverseWeight The reverse weight, or CLOSED to make the road one-way.
+     * @throws IllegalArgumentException if reverseWeight is negative and not CLOSED.
+     */
+    public void setReverseWeight(int reverseWeight) {
+        if (reverseWeight < 0 && reverseWeight != CLOSED) {
+            throw new IllegalArgumentException("reverse weight must not be negative");
+        }
+        this.reverseWeight = reverseWeight;
+    }
+
+    /**
+     * Gets the weight of leaving a town along this road.
+     *
+     * @param from One of the towns of the road.
+     * @return The weight from that town to the other one, or CLOSED if the road cannot be taken from it.
+     */
+    public int getWeightFrom(Town from) {
+        return source.equals(from) ? weight : destination.equals(from) ? getReverseWeight() : CLOSED;
+    }
+
+    /**
+     * Checks if the weight depends on the direction of travel.
+     *
+     * @return true if the road was given its own reverse weight or is one-way, false otherwise.
+     */
+    public boolean isDirected() {
+        return reverseWeight != SAME;
+    }
+
+    /**
+     * Checks if the road can only be taken from its source to its destination.
+     *
+     * @return true if the road is one-way, false otherwise.
+     */
+    public boolean isOneWay() {
+        return reverseWeight == CLOSED;
+    }
+
     /**
      * Gets the name of the road.
      *
@@ -104,7 +186,8 @@ public class Road implements Comparable<Road> {
     }
 
     /**
-     * Sets the distance of the road. (Possibly for deletion)
+     * Sets the distance of the road. (Possibly for deletion) A road with one weight for
+     * both directions keeps it that way.
      *
      * @param distance The new distance of the road.
      */
@@ -139,7 +222,9 @@ public class Road implements Comparable<Road> {
     }
 
     /**
-     * Checks if this road is equal to another object.
+     * Checks if this road is equal to another object. Two roads are equal when they have
+     * the same name and join the same two towns, in either direction, so a highway and a
+     * local road between the same towns are different roads. The weight is not compared.
      *
      * @param r The object to compare to.
      * @return True if the roads are equal, false otherwise.
@@ -149,8 +234,31 @@ public class Road implements Comparable<Road> {
         if (this == r) return true;
         if (!(r instanceof Road)) return false;
         Road road = (Road) r;
-        return (road.destination.equals(destination) && road.source.equals(source)) ||
-               (road.destination.equals(source) && road.source.equals(destination));
+        return Objects.equals(road.name, name) &&
+               ((road.destination.equals(destination) && road.source.equals(source)) ||
+                (road.destination.equals(source) && road.source.equals(destination)));
+    }
+
+    /**
+     * Computes a hash code from the two towns, consistent with equals: a road and the
+     * same road with its towns swapped hash alike. Weight and name are not included, so
+     * all the roads between two towns hash alike and equals tells them apart by name.
+     * The value is computed once and kept until setSource or setDestination is called,
+     * so a road must not be moved to other towns while it is in a HashSet or used as a
+     * HashMap key.
+     *
+     * @return A hash code for the road.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            int a = source.hashCode();
+            int b = destination.hashCode();
+            h = a < b ? 31 * a + b : 31 * b + a;
+            hash = h;
+        }
+        return h;
     }
 
     /**
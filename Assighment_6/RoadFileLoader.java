@@ -0,0 +1,293 @@
+package graphs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads road files of the form "roadName,weight;town1;town2" into a Graph.
+ *
+ * The file is split into chunks at line boundaries. Each chunk is memory-mapped
+ * and parsed on a worker thread by scanning its bytes for the ',' and ';'
+ * separators, with no regular expressions. The parsed roads are then added to
+ * the graph in file order with one bulk insert. Lines that cannot be used (too
+ * few fields, a bad weight, or a road with the same name as one already between
+ * the same two towns) are collected with their line numbers in the returned
+ * LoadReport. Roads with different names may join the same towns.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class RoadFileLoader {
+
+    // Largest chunk mapped and parsed as one task
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+
+    // Bytes read at a time while looking for the end of a line
+    private static final int SCAN_BYTES = 4096;
+
+    private final int threads;
+
+    /**
+     * Constructs a loader that parses on one thread per available processor.
+     */
+    public RoadFileLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a loader that parses on the given number of threads.
+     *
+     * @param threads the number of parser threads
+     */
+    public RoadFileLoader(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Loads a road file into a graph.
+     *
+     * @param file  the road file
+     * @param graph the graph to add the towns and roads to
+     * @return a report of what was loaded and which lines were rejected
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException           if the file cannot be read
+     */
+    public LoadReport load(File file, Graph graph) throws FileNotFoundException, IOException {
+        long start = System.nanoTime();
+
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            long[] bounds = _chunkBounds(channel, size);
+
+            List<Chunk> chunks = new ArrayList<>();
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, bounds.length - 1)));
+            try {
+                List<Future<Chunk>> parsed = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    long from = bounds[i];
+                    long to = bounds[i + 1];
+                    parsed.add(pool.submit(() -> new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from))));
+                }
+                for (Future<Chunk> f : parsed) {
+                    chunks.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + file, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not parse " + file, e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+
+            return _insert(graph, chunks, size, start);
+        }
+    }
+
+    // Helper method to split the file into chunks that end right after a line break.
+    // Returns the chunk start offsets followed by the file size.
+    private long[] _chunkBounds(FileChannel channel, long size) throws IOException {
+        long target = Math.min(MAX_CHUNK_BYTES, Math.max(SCAN_BYTES, size / (threads * 4L) + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BYTES);
+        long position = target;
+        while (position < size) {
+            long lineEnd = -1;
+            long at = position;
+            while (lineEnd < 0 && at < size) {
+                scan.clear();
+                int read = channel.read(scan, at);
+                for (int i = 0; i < read && lineEnd < 0; i++) {
+                    if (scan.get(i) == '\n') {
+                        lineEnd = at + i + 1;
+                    }
+                }
+                at += Math.max(read, 0);
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            position = lineEnd + target;
+        }
+
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Helper method to add the parsed roads to the graph in file order and build the report
+    private LoadReport _insert(Graph graph, List<Chunk> chunks, long size, long start) {
+        List<Road> roads = new ArrayList<>();
+        List<Integer> roadLines = new ArrayList<>();
+        List<LoadReport.Problem> problems = new ArrayList<>();
+        Map<String, Town> towns = new HashMap<>();
+
+        int firstLine = 1;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.count; i++) {
+                Town town1 = towns.computeIfAbsent(chunk.town1[i], Town::new);
+                Town town2 = towns.computeIfAbsent(chunk.town2[i], Town::new);
+                roads.add(new Road(town1, town2, chunk.weight[i], chunk.roadName[i]));
+                roadLines.add(firstLine + chunk.roadLine[i]);
+            }
+            for (LoadReport.Problem p : chunk.problems) {
+                problems.add(new LoadReport.Problem(firstLine + p.getLineNumber(), p.getLine(), p.getMessage()));
+            }
+            firstLine += chunk.lines;
+        }
+
+        boolean[] added = new boolean[roads.size()];
+        int townsAdded = graph.addAll(roads, added);
+        int roadsAdded = 0;
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) {
+                roadsAdded++;
+            } else {
+                Road r = roads.get(i);
+                problems.add(new LoadReport.Problem(roadLines.get(i), r.getName() + "," + r.getWeight() + ";"
+                        + r.getSource().getName() + ";" + r.getDestination().getName(),
+                        "towns are already connected by a road with this name"));
+            }
+        }
+        problems.sort((a, b) -> Integer.compare(a.getLineNumber(), b.getLineNumber()));
+
+        return new LoadReport(size, System.nanoTime() - start, firstLine - 1, townsAdded, roadsAdded, problems);
+    }
+
+    // The roads and problems parsed from one chunk. Line numbers are relative to the chunk.
+    private static class Chunk {
+        private String[] roadName = new String[64];
+        private int[] weight = new int[64];
+        private String[] town1 = new String[64];
+        private String[] town2 = new String[64];
+        private int[] roadLine = new int[64];
+        private int count;
+        private int lines;
+        private final List<LoadReport.Problem> problems = new ArrayList<>();
+
+        // Field boundaries of the line being parsed
+        private final int[] fieldStart = new int[4];
+        private final int[] fieldEnd = new int[4];
+        private byte[] scratch = new byte[64];
+
+        Chunk(MappedByteBuffer buffer) {
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                _parseLine(buffer, lineStart, lineEnd);
+                lines++;
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        // Splits one line at ',' and ';', trims the fields and records the road or the problem
+        private void _parseLine(MappedByteBuffer buffer, int start, int end) {
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+
+            int fields = 0;
+            int fieldFrom = start;
+            for (int i = start; i <= end && fields < 4; i++) {
+                if (i == end || buffer.get(i) == ',' || buffer.get(i) == ';') {
+                    fieldStart[fields] = fieldFrom;
+                    fieldEnd[fields] = i;
+                    fields++;
+                    fieldFrom = i + 1;
+                }
+            }
+            for (int f = 0; f < fields; f++) {
+                while (fieldStart[f] < fieldEnd[f] && _isSpace(buffer.get(fieldStart[f]))) {
+                    fieldStart[f]++;
+                }
+                while (fieldEnd[f] > fieldStart[f] && _isSpace(buffer.get(fieldEnd[f] - 1))) {
+                    fieldEnd[f]--;
+                }
+            }
+
+            if (fields == 1 && fieldStart[0] == fieldEnd[0]) {
+                return;
+            }
+            if (fields < 4) {
+                _problem(buffer, start, end, "expected roadName,weight;town1;town2");
+                return;
+            }
+
+            long value = 0;
+            boolean valid = fieldEnd[1] > fieldStart[1];
+            for (int i = fieldStart[1]; i < fieldEnd[1] && valid; i++) {
+                int digit = buffer.get(i) - '0';
+                valid = digit >= 0 && digit <= 9 && (value = value * 10 + digit) <= Integer.MAX_VALUE;
+            }
+            if (!valid) {
+                _problem(buffer, start, end, "weight is not a whole number");
+                return;
+            }
+
+            if (count == roadName.length) {
+                int capacity = count * 2;
+                roadName = Arrays.copyOf(roadName, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                town1 = Arrays.copyOf(town1, capacity);
+                town2 = Arrays.copyOf(town2, capacity);
+                roadLine = Arrays.copyOf(roadLine, capacity);
+            }
+            roadName[count] = _text(buffer, fieldStart[0], fieldEnd[0]);
+            weight[count] = (int) value;
+            town1[count] = _text(buffer, fieldStart[2], fieldEnd[2]);
+            town2[count] = _text(buffer, fieldStart[3], fieldEnd[3]);
+            roadLine[count] = lines;
+            count++;
+        }
+
+        private void _problem(MappedByteBuffer buffer, int start, int end, String message) {
+            problems.add(new LoadReport.Problem(lines, _text(buffer, start, end), message));
+        }
+
+        // Decodes the UTF-8 bytes in [start, end) into a string
+        private String _text(MappedByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(start + i);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // Matches what String.trim() removes
+        private static boolean _isSpace(byte b) {
+            return (b & 0xff) <= ' ';
+        }
+    }
+}
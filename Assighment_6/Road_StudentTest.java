@@ -2,6 +2,8 @@ package graphs;
 
 import static org.junit.Assert.*;
 
+import java.util.HashSet;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -67,6 +69,31 @@ public class Road_StudentTest {
     public void testEquals() {
         Road road4 = new Road(town1, town2, 4, "Lost Knife Road");
         assertTrue(road1.equals(road4));
+        assertTrue(road1.equals(new Road(town2, town1, 9, "Lost Knife Road")));
+        assertFalse(road1.equals(new Road(town1, town2, 4, "Other Road")));
+    }
+
+    /**
+     * Test for the hashCode method in the Road class.
+     */
+    @Test
+    public void testHashCode() {
+        Road reversed = new Road(new Town("Germantown"), new Town("Gaithersburg"), 9, "Other Road");
+        assertEquals(road1.hashCode(), reversed.hashCode());
+        assertEquals(road1.hashCode(), road1.hashCode());
+
+        HashSet<Road> roads = new HashSet<>();
+        roads.add(road1);
+        roads.add(road2);
+        assertFalse(roads.contains(reversed));
+        assertTrue(roads.contains(new Road(town2, town1, 9, "Lost Knife Road")));
+        assertTrue(roads.remove(new Road(town3, town1, "Shakespeare Road")));
+        assertFalse(roads.contains(road3));
+
+        int before = road3.hashCode();
+        road3.setDestination(town1);
+        assertEquals(new Road(town1, town2, "Any Road").hashCode(), road3.hashCode());
+        assertNotEquals(before, road3.hashCode());
     }
 
     /**
@@ -125,4 +152,35 @@ public class Road_StudentTest {
         String actual = road.toString();
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the weight of a road in each direction and one-way roads.
+     */
+    @Test
+    public void testReverseWeight() {
+        assertFalse(road1.isDirected());
+        assertEquals(4, road1.getWeightFrom(town2));
+        road1.setDistance(6);
+        assertEquals(6, road1.getReverseWeight());
+
+        Road uphill = new Road(town1, town2, 4, 7, "Hill Road");
+        assertTrue(uphill.isDirected());
+        assertFalse(uphill.isOneWay());
+        assertEquals(4, uphill.getWeightFrom(town1));
+        assertEquals(7, uphill.getWeightFrom(town2));
+        assertEquals(Road.CLOSED, uphill.getWeightFrom(town3));
+
+        uphill.setReverseWeight(Road.CLOSED);
+        assertTrue(uphill.isOneWay());
+        assertEquals(Road.CLOSED, uphill.getWeightFrom(town2));
+        assertEquals(uphill, new Road(town2, town1, "Hill Road"));
+    }
+
+    /**
+     * Tests that a negative reverse weight other than CLOSED is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeReverseWeight() {
+        new Road(town1, town2, 4, -5, "Hill Road");
+    }
+}
@@ -0,0 +1,219 @@
+package graphs;
+
+import java.util.ArrayList;
+
+/**
+ * A shortest path between two towns, kept as arrays of towns and roads. The
+ * total distance and the number of roads are known without looking at the
+ * steps, and the "Town_1 via Road_2 to Town_3 4 mi" strings returned by
+ * shortestPath are only built when toSteps or step is called.
+ *
+ * Routes found in a Graph refer to its Town and Road objects and keep the weight
+ * of each step as it was when the route was found, since a road's weight can be
+ * changed in place afterwards. Routes found in a GraphSnapshot or
+ * ContractionHierarchy hold town and road ids and look the names up in the
+ * snapshot.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class Route {
+
+    private static final Route NOT_FOUND = new Route(new Town[0], new Road[0], new int[0], Integer.MAX_VALUE);
+
+    private final int distance;
+
+    // Path through a Graph: towns[i] to towns[i + 1] is travelled along roads[i]
+    private final Town[] towns;
+    private final Road[] roads;
+    private final int[] weights;
+
+    // Path through a GraphSnapshot, by town and road id
+    private final GraphSnapshot snapshot;
+    private final int[] townIds;
+    private final int[] roadIds;
+
+    /**
+     * Constructs a route through a Graph, reading the weight of each step from its road.
+     * The caller holds the graph's lock, so the weights agree with the distance.
+     *
+     * @param towns    The towns of the route, from the source to the destination.
+     * @param roads    The roads of the route; roads[i] leads from towns[i] to towns[i + 1].
+     * @param distance The total weight of the roads.
+     */
+    Route(Town[] towns, Road[] roads, int distance) {
+        this(towns, roads, _weights(towns, roads), distance);
+    }
+
+    /**
+     * Constructs a route through a Graph with the weight of each step given.
+     *
+     * @param towns    The towns of the route, from the source to the destination.
+     * @param roads    The roads of the route; roads[i] leads from towns[i] to towns[i + 1].
+     * @param weights  The weight of each road in the direction it is travelled.
+     * @param distance The total weight of the roads.
+     */
+    Route(Town[] towns, Road[] roads, int[] weights, int distance) {
+        this.towns = towns;
+        this.roads = roads;
+        this.weights = weights;
+        this.distance = distance;
+        snapshot = null;
+        townIds = null;
+        roadIds = null;
+    }
+
+    /**
+     * Constructs a route through a GraphSnapshot.
+     *
+     * @param snapshot The snapshot the ids belong to.
+     * @param townIds  The town ids of the route, from the source to the destination.
+     * @param roadIds  The road ids of the route; roadIds[i] leads from townIds[i] to townIds[i + 1].
+     * @param distance The total weight of the roads.
+     */
+    Route(GraphSnapshot snapshot, int[] townIds, int[] roadIds, int distance) {
+        this.snapshot = snapshot;
+        this.townIds = townIds;
+        this.roadIds = roadIds;
+        this.distance = distance;
+        towns = null;
+        roads = null;
+        weights = null;
+    }
+
+    // Helper method to read the weight of each road in the direction the route travels it
+    private static int[] _weights(Town[] towns, Road[] roads) {
+        int[] weights = new int[roads.length];
+        for (int i = 0; i < roads.length; i++) {
+            weights[i] = roads[i].getWeightFrom(towns[i]);
+        }
+        return weights;
+    }
+
+    /**
+     * Gets the route returned when two towns are not connected.
+     *
+     * @return A route with no towns and no roads.
+     */
+    static Route notFound() {
+        return NOT_FOUND;
+    }
+
+    // The id arrays of a snapshot route, shared rather than copied; callers must not modify them
+
+    int[] townIds() {
+        return townIds;
+    }
+
+    int[] roadIds() {
+        return roadIds;
+    }
+
+    /**
+     * Checks if a path was found.
+     *
+     * @return true if the towns are connected, false otherwise.
+     */
+    public boolean isFound() {
+        return getTownCount() > 0;
+    }
+
+    /**
+     * Gets the total length of the route.
+     *
+     * @return The distance, or Integer.MAX_VALUE if no path was found.
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * Gets the number of roads travelled.
+     *
+     * @return The number of roads; 0 if no path was found or the towns are the same.
+     */
+    public int getHopCount() {
+        return snapshot == null ? roads.length : roadIds.length;
+    }
+
+    /**
+     * Gets the number of towns on the route, both ends included.
+     *
+     * @return The number of towns; 0 if no path was found.
+     */
+    public int getTownCount() {
+        return snapshot == null ? towns.length : townIds.length;
+    }
+
+    /**
+     * Gets a town of the route.
+     *
+     * @param i The position of the town, from 0 (the source) to getHopCount() (the destination).
+     * @return The town.
+     */
+    public Town getTown(int i) {
+        return snapshot == null ? towns[i] : snapshot.townAt(townIds[i]);
+    }
+
+    /**
+     * Gets the name of a road of the route.
+     *
+     * @param i The position of the road, from 0 to getHopCount() - 1.
+     * @return The name of the road.
+     */
+    public String getRoadName(int i) {
+        return snapshot == null ? roads[i].getName() : snapshot.roadNames()[roadIds[i]];
+    }
+
+    /**
+     * Gets the weight of a road of the route in the direction it is travelled.
+     *
+     * @param i The position of the road, from 0 to getHopCount() - 1.
+     * @return The weight of the road when the route was found.
+     */
+    public int getRoadWeight(int i) {
+        return snapshot == null ? weights[i] : snapshot.stepWeight(townIds[i], roadIds[i]);
+    }
+
+    /**
+     * Describes one road of the route in the format "Town_1 via Road_2 to Town_3 4 mi".
+     *
+     * @param i The position of the road, from 0 to getHopCount() - 1.
+     * @return The description of the step.
+     */
+    public String step(int i) {
+        if (snapshot != null) {
+            return snapshot.describeStep(townIds[i], roadIds[i], townIds[i + 1]);
+        }
+        return towns[i].getName() + " via " + roads[i].getName() + " to " + towns[i + 1].getName() + " " + getRoadWeight(i) + " mi";
+    }
+
+    /**
+     * Describes the route one road per entry, as returned by shortestPath.
+     *
+     * @return The steps of the route; empty if no path was found or the towns are the same.
+     */
+    public ArrayList<String> toSteps() {
+        int hops = getHopCount();
+        ArrayList<String> steps = new ArrayList<>(hops);
+        for (int i = 0; i < hops; i++) {
+            steps.add(step(i));
+        }
+        return steps;
+    }
+
+    /**
+     * Returns a one-line summary of the route.
+     *
+     * @return The ends, hop count and distance of the route.
+     */
+    @Override
+    public String toString() {
+        if (!isFound()) {
+            return "Route not found";
+        }
+        return "Route " + getTown(0).getName() + " to " + getTown(getHopCount()).getName() + ", " + getHopCount()
+                + " roads, " + distance + " mi";
+    }
+}
@@ -0,0 +1,149 @@
+package graphs;
+
+import java.util.Random;
+
+/**
+ * Driver that compares the routing engines of the graphs package on a synthetic
+ * grid-shaped road network: build time, memory and average query latency of
+ * plain Dijkstra on a Graph and on a GraphSnapshot against a contraction hierarchy.
+ *
+ * Usage: java graphs.RoutingBenchmark [gridSide] [queries]
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class RoutingBenchmark {
+
+    // Keeps query results alive so the JIT cannot drop the work being timed
+    private static long sink;
+
+    /**
+     * Runs the benchmark and prints the results.
+     *
+     * @param args optional grid side length (default 100) and number of queries (default 1000)
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        Town[] towns = new Town[side * side];
+        Graph graph = grid(side, towns, new Random(42));
+        System.out.println("Grid " + side + "x" + side + ": " + towns.length + " towns, " + graph.edgeSet().size() + " roads");
+
+        long start = System.nanoTime();
+        GraphSnapshot snapshot = graph.snapshot();
+        double snapshotMillis = (System.nanoTime() - start) / 1e6;
+        ContractionHierarchy hierarchy = new ContractionHierarchy(snapshot);
+
+        System.out.printf("%-24s %12s %14s %14s%n", "engine", "build ms", "index bytes", "query us");
+        report("Graph (bidirectional)", 0, 0, queries, towns, (a, b) -> graph.shortestPath(a, b).size());
+        report("GraphSnapshot Dijkstra", snapshotMillis, snapshot.memoryBytes(), queries, towns, (a, b) -> snapshot.shortestPath(a, b).size());
+        report("ContractionHierarchy", hierarchy.getBuildMillis(), hierarchy.memoryBytes(), queries, towns, (a, b) -> hierarchy.shortestPath(a, b).size());
+        System.out.println(hierarchy);
+    }
+
+    /**
+     * Builds a square grid of towns with random road lengths between neighbors.
+     *
+     * @param side   the number of towns along each side
+     * @param towns  array of length side * side to receive the towns
+     * @param random source of road lengths
+     * @return the grid graph
+     */
+    static Graph grid(int side, Town[] towns, Random random) {
+        Graph graph = new Graph();
+        for (int i = 0; i < towns.length; i++) {
+            towns[i] = new Town("Town_" + i, (i % side) * 10, (i / side) * 10);
+            graph.addVertex(towns[i]);
+        }
+        for (int i = 0; i < towns.length; i++) {
+            if (i % side + 1 < side) {
+                graph.addEdge(towns[i], towns[i + 1], 10 + random.nextInt(20), "Road_" + i + "_E");
+            }
+            if (i + side < towns.length) {
+                graph.addEdge(towns[i], towns[i + side], 10 + random.nextInt(20), "Road_" + i + "_S");
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Builds a random geometric road network: towns are scattered uniformly over a square
+     * with one town per 100 square units on average, and every two towns closer than 15
+     * units are joined by a road as long as the distance between them (rounded, at least 1).
+     * Towns end up with about 7 roads each; a few are left without any.
+     *
+     * @param towns  array to receive the towns; its length is the number of towns
+     * @param random source of town positions
+     * @return the geometric graph
+     */
+    static Graph geometric(Town[] towns, Random random) {
+        double radius = 15;
+        double extent = Math.sqrt(towns.length) * 10;
+        int cells = Math.max(1, (int) (extent / radius));
+        double cellSize = extent / cells;
+
+        // Bucket the towns by grid cell so only the eight surrounding cells need to be checked
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[towns.length];
+        Graph graph = new Graph();
+        for (int i = 0; i < towns.length; i++) {
+            towns[i] = new Town("Town_" + i, random.nextDouble() * extent, random.nextDouble() * extent);
+            graph.addVertex(towns[i]);
+            int cx = Math.min(cells - 1, (int) (towns[i].getX() / cellSize));
+            int cy = Math.min(cells - 1, (int) (towns[i].getY() / cellSize));
+            cellOf[i] = cy * cells + cx;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] members = new int[towns.length];
+        int[] next = cellStart.clone();
+        for (int i = 0; i < towns.length; i++) {
+            members[next[cellOf[i]]++] = i;
+        }
+
+        for (int i = 0; i < towns.length; i++) {
+            int cx = cellOf[i] % cells;
+            int cy = cellOf[i] / cells;
+            for (int y = Math.max(0, cy - 1); y <= Math.min(cells - 1, cy + 1); y++) {
+                for (int x = Math.max(0, cx - 1); x <= Math.min(cells - 1, cx + 1); x++) {
+                    int c = y * cells + x;
+                    for (int m = cellStart[c]; m < cellStart[c + 1]; m++) {
+                        int j = members[m];
+                        double d = Math.hypot(towns[i].getX() - towns[j].getX(), towns[i].getY() - towns[j].getY());
+                        if (j > i && d < radius) {
+                            graph.addEdge(towns[i], towns[j], Math.max(1, (int) Math.round(d)), "Road_" + i + "_" + j);
+                        }
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    // Times a query engine over the same pseudo-random town pairs and prints one result row
+    private static void report(String engine, double buildMillis, long bytes, int queries, Town[] towns, Query query) {
+        Random random = new Random(7);
+        int hops = 0;
+        for (int i = 0; i < Math.min(queries, 100); i++) {
+            hops += query.run(towns[random.nextInt(towns.length)], towns[random.nextInt(towns.length)]);
+        }
+
+        random = new Random(7);
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            hops += query.run(towns[random.nextInt(towns.length)], towns[random.nextInt(towns.length)]);
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / queries;
+        sink += hops;
+        System.out.printf("%-24s %12.1f %14d %14.1f%n", engine, buildMillis, bytes, micros);
+    }
+
+    // A point-to-point query returning the number of roads on the path
+    private interface Query {
+        int run(Town source, Town destination);
+    }
+}
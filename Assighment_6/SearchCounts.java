@@ -0,0 +1,44 @@
+package graphs;
+
+/**
+ * The work done by shortest-path searches: towns settled, roads relaxed and
+ * heap operations (pushes, decrease-keys and polls).
+ *
+ * Each search engine keeps running totals per thread; a caller adds the totals
+ * of its thread before and after a query and takes the difference, so a query
+ * that returns early without searching simply counts as no work.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+final class SearchCounts {
+
+    long settled;
+    long relaxed;
+    long heapOperations;
+
+    /**
+     * Adds work to the counts.
+     *
+     * @param settled        The number of towns settled.
+     * @param relaxed        The number of roads relaxed.
+     * @param heapOperations The number of heap operations.
+     */
+    void add(long settled, long relaxed, long heapOperations) {
+        this.settled += settled;
+        this.relaxed += relaxed;
+        this.heapOperations += heapOperations;
+    }
+
+    /**
+     * Subtracts earlier counts, leaving the work done since they were taken.
+     *
+     * @param before The counts taken before the work.
+     */
+    void subtract(SearchCounts before) {
+        settled -= before.settled;
+        relaxed -= before.relaxed;
+        heapOperations -= before.heapOperations;
+    }
+}
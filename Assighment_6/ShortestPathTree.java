@@ -0,0 +1,214 @@
+package graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The result of one Dijkstra search: the distance of every reached town from the
+ * source and the road used to reach it. Each search builds its own tree, so
+ * concurrent searches on the same graph never share state.
+ *
+ * The tables are arrays indexed by the dense ids of the graph's TownRegistry,
+ * so looking a town up needs no hashing when the town is the graph's own instance.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class ShortestPathTree {
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final Town source;              // The town the search started from
+    private final TownRegistry registry;    // Gives the index of each town in the tables
+    private int[] distance;                 // Distance of each town from the source, or UNREACHED
+    private Town[] past;                    // Previous town on the shortest path to each town
+    private Road[] via;                     // Road taken from the previous town
+
+    /**
+     * Constructs a tree in which only the source town is reached.
+     *
+     * @param source   The source town.
+     * @param registry The registry whose ids index the tables.
+     * @param capacity The number of ids the tables hold at first.
+     */
+    ShortestPathTree(Town source, TownRegistry registry, int capacity) {
+        this.source = source;
+        this.registry = registry;
+        distance = new int[capacity];
+        past = new Town[capacity];
+        via = new Road[capacity];
+        Arrays.fill(distance, UNREACHED);
+        int id = registry.idOf(source);
+        if (id >= 0 && id < capacity) {
+            distance[id] = 0;
+        }
+    }
+
+    /**
+     * Constructs a copy of a tree that can be changed without affecting the original.
+     *
+     * @param other The tree to copy.
+     */
+    ShortestPathTree(ShortestPathTree other) {
+        source = other.source;
+        registry = other.registry;
+        distance = other.distance.clone();
+        past = other.past.clone();
+        via = other.via.clone();
+    }
+
+    /**
+     * Records a shorter distance to a town and the road it was reached by.
+     *
+     * @param town     The town reached.
+     * @param distance The distance of the town from the source.
+     * @param previous The previous town on the path.
+     * @param road     The road from the previous town.
+     */
+    void update(Town town, int distance, Town previous, Road road) {
+        int id = registry.idOf(town);
+        if (id >= this.distance.length) {
+            int capacity = Math.max(id + 1, this.distance.length * 2);
+            int from = this.distance.length;
+            this.distance = Arrays.copyOf(this.distance, capacity);
+            Arrays.fill(this.distance, from, capacity, UNREACHED);
+            past = Arrays.copyOf(past, capacity);
+            via = Arrays.copyOf(via, capacity);
+        }
+        this.distance[id] = distance;
+        past[id] = previous;
+        via[id] = road;
+    }
+
+    /**
+     * Records the distance, previous town and road of a town by id, for a search that
+     * already knows the ids. The id must be below the capacity the tree was built with.
+     *
+     * @param id       The id of the town reached.
+     * @param distance The distance of the town from the source.
+     * @param previous The previous town on the path, or null for the source.
+     * @param road     The road from the previous town, or null for the source.
+     */
+    void set(int id, int distance, Town previous, Road road) {
+        this.distance[id] = distance;
+        past[id] = previous;
+        via[id] = road;
+    }
+
+    /**
+     * Forgets a town, as if the search had never reached it.
+     *
+     * @param town The town to forget.
+     */
+    void remove(Town town) {
+        int id = _index(town);
+        if (id >= 0) {
+            distance[id] = UNREACHED;
+            past[id] = null;
+            via[id] = null;
+        }
+    }
+
+    /**
+     * Gets the town before the given one on its shortest path from the source.
+     *
+     * @param town The town to look up.
+     * @return The previous town, or null for the source or an unreached town.
+     */
+    Town previous(Town town) {
+        int id = _index(town);
+        return id < 0 ? null : past[id];
+    }
+
+    /**
+     * Gets the road by which the given town is reached on its shortest path from the source.
+     *
+     * @param town The town to look up.
+     * @return The road, or null for the source or an unreached town.
+     */
+    Road via(Town town) {
+        int id = _index(town);
+        return id < 0 ? null : via[id];
+    }
+
+    // Helper method to find the index of a town in the tables, or -1 if it has none
+    private int _index(Town town) {
+        int id = registry.idOf(town);
+        return id < distance.length ? id : -1;
+    }
+
+    /**
+     * Gets the source town of the tree.
+     *
+     * @return The source town.
+     */
+    public Town getSource() {
+        return source;
+    }
+
+    /**
+     * Checks if a town was reached from the source.
+     *
+     * @param town The town to check.
+     * @return true if the town is reachable, false otherwise.
+     */
+    public boolean isReachable(Town town) {
+        return getDistance(town) != UNREACHED;
+    }
+
+    /**
+     * Gets the shortest distance from the source to a town.
+     *
+     * @param town The town to look up.
+     * @return The distance, or Integer.MAX_VALUE if the town was not reached.
+     */
+    public int getDistance(Town town) {
+        int id = _index(town);
+        if (id < 0) {
+            // A source outside the graph still reaches itself
+            return town != null && town.equals(source) ? 0 : UNREACHED;
+        }
+        return distance[id];
+    }
+
+    /**
+     * Describes the shortest path from the source to a town, one road per entry, in the
+     * format "Town_1 via Road_2 to Town_3 4 mi".
+     *
+     * @param destination The destination town.
+     * @return The steps of the path; empty if the town is the source or was not reached.
+     */
+    public ArrayList<String> pathTo(Town destination) {
+        return routeTo(destination).toSteps();
+    }
+
+    /**
+     * Gets the shortest route from the source to a town without formatting its steps.
+     *
+     * @param destination The destination town.
+     * @return The route; not found if the town was not reached.
+     */
+    public Route routeTo(Town destination) {
+        if (!isReachable(destination)) {
+            return Route.notFound();
+        }
+
+        int hops = 0;
+        for (Town t = destination; previous(t) != null; t = previous(t)) {
+            hops++;
+        }
+        // The weights come from the tree's own distances, not from the roads, which may have
+        // been changed since the search and may be changing now if the tree is read unlocked
+        Town[] towns = new Town[hops + 1];
+        Road[] roads = new Road[hops];
+        int[] weights = new int[hops];
+        towns[hops] = destination;
+        for (Town t = destination; previous(t) != null; t = previous(t)) {
+            roads[--hops] = via(t);
+            towns[hops] = previous(t);
+            weights[hops] = getDistance(t) - getDistance(towns[hops]);
+        }
+        return new Route(towns, roads, weights, getDistance(destination));
+    }
+}
@@ -11,7 +11,16 @@ import java.util.Objects;
  */
 public class Town implements Comparable<Town> {
 
-    private String name;
+    private final String name;
+    private int hash;  // Cached hashCode; the name never changes
+
+    // The id this instance was last registered under, in whichever TownRegistry did it.
+    // Only a hint: a registry checks it against its own table before trusting it.
+    int idHint;
+
+    // Optional map coordinates, in miles; NaN when the town has none
+    private double x;
+    private double y;
 
     /**
      * Constructs a new Town with the given name.
@@ -19,16 +28,30 @@ public class Town implements Comparable<Town> {
      * @param name The name of the town.
      */
     public Town(String name) {
+        this(name, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructs a new Town with the given name and map coordinates. Coordinates are
+     * in miles so they can be compared with road lengths.
+     *
+     * @param name The name of the town.
+     * @param x    The x coordinate of the town.
+     * @param y    The y coordinate of the town.
+     */
+    public Town(String name, double x, double y) {
         this.name = name;
+        this.x = x;
+        this.y = y;
     }
 
     /**
-     * Copy constructor that creates a new Town using the name of the templateTown.
+     * Copy constructor that creates a new Town using the name and coordinates of the templateTown.
      *
      * @param templateTown The template town to copy.
      */
     public Town(Town templateTown) {
-        this.name = templateTown.getName();
+        this(templateTown.getName(), templateTown.x, templateTown.y);
     }
 
     /**
@@ -40,6 +63,43 @@ public class Town implements Comparable<Town> {
         return name;
     }
 
+    /**
+     * Checks if the town has map coordinates.
+     *
+     * @return true if the town has coordinates, false otherwise.
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(x) && !Double.isNaN(y);
+    }
+
+    /**
+     * Gets the x coordinate of the town.
+     *
+     * @return The x coordinate, or NaN if the town has no coordinates.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y coordinate of the town.
+     *
+     * @return The y coordinate, or NaN if the town has no coordinates.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Computes the straight-line distance to another town.
+     *
+     * @param other The other town.
+     * @return The distance between the towns, or NaN if either has no coordinates.
+     */
+    public double distanceTo(Town other) {
+        return Math.hypot(x - other.x, y - other.y);
+    }
+
     /**
      * Compares this town with another town based on their names.
      *
@@ -69,7 +129,13 @@ public class Town implements Comparable<Town> {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name);
+        int h = hash;
+        if (h == 0) {
+            // Same value as Objects.hash(name), without the varargs array
+            h = 31 + Objects.hashCode(name);
+            hash = h;
+        }
+        return h;
     }
 
     /**
@@ -5,28 +5,66 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of the TownGraphManagerInterface using a Graph data structure.
  * 
+ * Queries such as getPath may be called from many threads at once. Operations
+ * that check the graph before changing it hold the graph's write lock for the
+ * whole sequence.
+ * 
  * @author Moises Merlos
  * @date 12/03/2023
  * 
  */
 public class TownGraphManager implements TownGraphManagerInterface {
+    /** Number of shortest-path trees cached by default. */
+    public static final int DEFAULT_PATH_CACHE_SIZE = 64;
+
     Graph tGraph;
+    private final PathCache pathCache;
+
+    // Sorted town and road names with the graph version they were built at
+    private ArrayList<String> sortedTowns;
+    private long sortedTownsVersion = -1;
+    private ArrayList<String> sortedRoads;
+    private long sortedRoadsVersion = -1;
+
+    // Optional contraction hierarchy used by getPath, rebuilt after the graph changes. Queries
+    // read it without locking; only a rebuild takes hierarchyLock.
+    private volatile boolean useHierarchy;
+    private volatile ContractionHierarchy hierarchy;
+    private final Object hierarchyLock = new Object();
+
+    // Latency and search work of getPath and getRoute queries, off until enabled
+    private final QueryMetrics metrics = new QueryMetrics();
 
     /**
      * Constructor to initialize the TownGraphManager.
      */
     public TownGraphManager() {
+        this(DEFAULT_PATH_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor to initialize the TownGraphManager with a given path cache size.
+     *
+     * @param pathCacheSize the number of shortest-path trees to cache by source town; 0 disables the cache
+     */
+    public TownGraphManager(int pathCacheSize) {
         tGraph = new Graph();
+        pathCache = new PathCache(pathCacheSize);
     }
 
     /**
-     * Adds a road between two towns with the specified weight and road name.
+     * Adds a road between two towns with the specified weight and road name. Towns may be
+     * joined by several roads as long as their names differ.
      *
      * @param town1    the name of the first town
      * @param town2    the name of the second town
@@ -36,38 +74,39 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public boolean addRoad(String town1, String town2, int weight, String roadName) {
-        Town sourceTown = findTownByName(town1);
-        Town destinationTown = findTownByName(town2);
+        tGraph.writeLock().lock();
+        try {
+            Town sourceTown = findTownByName(town1);
+            Town destinationTown = findTownByName(town2);
 
-        if (sourceTown == null || destinationTown == null || tGraph.containsEdge(sourceTown, destinationTown)) {
-            return false;
-        }
+            if (sourceTown == null || destinationTown == null
+                    || tGraph.getEdge(sourceTown, destinationTown, roadName) != null) {
+                return false;
+            }
 
-        Road road = tGraph.addEdge(sourceTown, destinationTown, weight, roadName);
+            long before = tGraph.getVersion();
+            Road road = tGraph.addEdge(sourceTown, destinationTown, weight, roadName);
+            _repairPathCache(before, road);
 
-        return road != null;
+            return road != null;
+        } finally {
+            tGraph.writeLock().unlock();
+        }
     }
 
     /**
-     * Helper method to find a town by name in the graph.
+     * Helper method to find a town by name in the graph, ignoring case.
      *
      * @param townName the name of the town to find
      * @return the Town object if found, null otherwise
      */
     private Town findTownByName(String townName) {
-        Set<Town> towns = tGraph.vertexSet();
-
-        for (Town town : towns) {
-            if (town.getName().equalsIgnoreCase(townName)) {
-                return town;
-            }
-        }
-
-        return null;
+        return tGraph.getVertexIgnoreCase(townName);
     }
 
     /**
-     * Retrieves the name of the road connecting two towns.
+     * Retrieves the name of the road connecting two towns; when several roads connect
+     * them, the name of the shortest one.
      *
      * @param town1 the name of the first town
      * @param town2 the name of the second town
@@ -78,13 +117,12 @@ public class TownGraphManager implements TownGraphManagerInterface {
         Town t1 = getTown(town1);
         Town t2 = getTown(town2);
 
-        for (Road road : tGraph.edgeSet()) {
-            if (road.contains(t1) && road.contains(t2)) {
-                return road.getName();
-            }
+        if (t1 == null || t2 == null) {
+            return null;
         }
 
-        return null;
+        Road road = tGraph.getEdge(t1, t2);
+        return road == null ? null : road.getName();
     }
 
     /**
@@ -95,7 +133,7 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public boolean addTown(String v) {
-        return tGraph.addVertex(new Town(v));
+        return tGraph.addVertex(tGraph.registry().intern(v));
     }
 
     /**
@@ -106,12 +144,7 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public Town getTown(String name) {
-        for (Town town : tGraph.vertexSet()) {
-            if (town.getName().equals(name)) {
-                return town;
-            }
-        }
-        return null;
+        return tGraph.getVertex(name);
     }
 
     /**
@@ -122,7 +155,7 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public boolean containsTown(String v) {
-        return tGraph.containsVertex(new Town(v));
+        return tGraph.getVertex(v) != null;
     }
 
     /**
@@ -134,25 +167,31 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public boolean containsRoadConnection(String town1, String town2) {
-        Town sourceTown = new Town(town1);
-        Town destinationTown = new Town(town2);
-        return tGraph.containsEdge(sourceTown, destinationTown);
+        Town sourceTown = tGraph.getVertex(town1);
+        Town destinationTown = tGraph.getVertex(town2);
+        return sourceTown != null && destinationTown != null && tGraph.containsEdge(sourceTown, destinationTown);
     }
 
     /**
-     * Retrieves a list of all road names in the graph, sorted alphabetically.
+     * Retrieves a list of all road names in the graph, sorted alphabetically. The sorted
+     * names are kept until the graph changes, so repeated calls only copy the list.
      *
      * @return a sorted list of road names
      */
     @Override
-    public ArrayList<String> allRoads() {
-        Set<Road> roads = tGraph.edgeSet();
-        ArrayList<String> otherRoads = new ArrayList<String>();
-        for (Road road : roads) {
-            otherRoads.add(road.getName());
+    public synchronized ArrayList<String> allRoads() {
+        long version = tGraph.getVersion();
+        if (sortedRoads == null || sortedRoadsVersion != version) {
+            Set<Road> roads = tGraph.edgeSet();
+            ArrayList<String> otherRoads = new ArrayList<String>(roads.size());
+            for (Road road : roads) {
+                otherRoads.add(road.getName());
+            }
+            Collections.sort(otherRoads);
+            sortedRoads = otherRoads;
+            sortedRoadsVersion = version;
         }
-        Collections.sort(otherRoads);
-        return otherRoads;
+        return new ArrayList<String>(sortedRoads);
     }
 
     /**
@@ -165,27 +204,68 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public boolean deleteRoadConnection(String town1, String town2, String road) {
-        Town sourceTown = getTown(town1);
-        Town destinationTown = getTown(town2);
+        tGraph.writeLock().lock();
+        try {
+            Town sourceTown = getTown(town1);
+            Town destinationTown = getTown(town2);
 
-        if (sourceTown == null || destinationTown == null) {
-            return false;
-        }
+            if (sourceTown == null || destinationTown == null) {
+                return false;
+            }
 
-        Road roads = tGraph.getEdge(sourceTown, destinationTown);
+            Road roads = tGraph.getEdge(sourceTown, destinationTown, road);
 
-        if (roads == null) {
-            return false;
-        }
+            if (roads == null) {
+                return false;
+            }
 
-        if (roads.getName().equals(road)) {
+            long before = tGraph.getVersion();
             tGraph.removeEdge(sourceTown, destinationTown, roads.getWeight(), road);
+            _repairPathCache(before, roads);
+            return true;
+        } finally {
+            tGraph.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the weight of the road between two towns, for example after a traffic
+     * update. Cached shortest paths are repaired rather than recomputed.
+     *
+     * @param town1  the name of the first town
+     * @param town2  the name of the second town
+     * @param weight the new weight (distance) of the road
+     * @return true if the road exists and was changed, false otherwise
+     */
+    public boolean setRoadWeight(String town1, String town2, int weight) {
+        tGraph.writeLock().lock();
+        try {
+            Town sourceTown = getTown(town1);
+            Town destinationTown = getTown(town2);
+
+            if (sourceTown == null || destinationTown == null) {
+                return false;
+            }
+
+            long before = tGraph.getVersion();
+            Road road = tGraph.setRoadWeight(sourceTown, destinationTown, weight);
+            if (road == null) {
+                return false;
+            }
+            _repairPathCache(before, road);
             return true;
-        } else {
-            return false;
+        } finally {
+            tGraph.writeLock().unlock();
         }
     }
 
+    // Helper method to carry the cached shortest-path trees over a change to one road;
+    // the caller holds the write lock
+    private void _repairPathCache(long before, Road changed) {
+        List<Road> roads = Collections.singletonList(changed);
+        pathCache.repair(before, tGraph.getVersion(), tree -> tGraph.repairShortestPathTree(tree, roads));
+    }
+
     /**
      * Deletes a town from the graph.
      *
@@ -198,23 +278,31 @@ public class TownGraphManager implements TownGraphManagerInterface {
     }
 
     /**
-     * Retrieves a list of all town names in the graph, sorted alphabetically.
+     * Retrieves a list of all town names in the graph, sorted alphabetically. The sorted
+     * names are kept until the graph changes, so repeated calls only copy the list.
      *
      * @return a sorted list of town names
      */
     @Override
-    public ArrayList<String> allTowns() {
-        Set<Town> towns = tGraph.vertexSet();
-        ArrayList<String> allTowns = new ArrayList<String>();
-        for (Town town : towns) {
-            allTowns.add(town.getName());
+    public synchronized ArrayList<String> allTowns() {
+        long version = tGraph.getVersion();
+        if (sortedTowns == null || sortedTownsVersion != version) {
+            Set<Town> towns = tGraph.vertexSet();
+            ArrayList<String> allTowns = new ArrayList<String>(towns.size());
+            for (Town town : towns) {
+                allTowns.add(town.getName());
+            }
+            Collections.sort(allTowns);
+            sortedTowns = allTowns;
+            sortedTownsVersion = version;
         }
-        Collections.sort(allTowns);
-        return allTowns;
+        return new ArrayList<String>(sortedTowns);
     }
 
     /**
-     * Retrieves the shortest path between two towns.
+     * Retrieves the shortest path between two towns. Shortest-path trees are cached by
+     * source town until the graph changes, so repeated queries from the same town skip
+     * the search.
      *
      * @param town1 the name of the starting town
      * @param town2 the name of the destination town
@@ -222,40 +310,302 @@ public class TownGraphManager implements TownGraphManagerInterface {
      */
     @Override
     public ArrayList<String> getPath(String town1, String town2) {
-        return tGraph.shortestPath(getTown(town1), getTown(town2));
+        return getRoute(town1, town2).toSteps();
     }
 
     /**
-     * Populates the town graph from a file.
+     * Retrieves the shortest route between two towns with the same lookups as getPath,
+     * for callers that need the distance or number of roads rather than the formatted
+     * steps.
      *
-     * @param selectedFile the file containing road information
-     * @throws FileNotFoundException if the file is not found
-     * @throws IOException           if there is an error reading the file
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the route; not found if either town is unknown or they are not connected
      */
-    public void populateTownGraph(File selectedFile) throws FileNotFoundException, IOException {
-        try (Scanner in = new Scanner(selectedFile)) {
-            while (in.hasNextLine()) {
-                String line = in.nextLine();
-                String[] splitLine = line.split("[,;]");
-
-                if (splitLine.length >= 4) {
-                    String roadName = splitLine[0].trim();
-                    int weight = Integer.parseInt(splitLine[1].trim());
-                    String town1Name = splitLine[2].trim();
-                    String town2Name = splitLine[3].trim();
-
-                    Town town1 = new Town(town1Name);
-                    Town town2 = new Town(town2Name);
-
-                    tGraph.addVertex(town1);
-                    tGraph.addVertex(town2);
-                    tGraph.addEdge(town1, town2, weight, roadName);
-                } else {
-                    System.out.println("Invalid line format: " + line);
+    public Route getRoute(String town1, String town2) {
+        if (!metrics.isEnabled()) {
+            return _route(town1, town2, null);
+        }
+
+        long start = System.nanoTime();
+        SearchCounts counts = new SearchCounts();
+        Route route = _route(town1, town2, counts);
+        metrics.record(System.nanoTime() - start, counts);
+        return route;
+    }
+
+    // Helper method answering a route query. When counts are given they receive the search
+    // work of the query, read from the running totals of the engine that answered it.
+    private Route _route(String town1, String town2, SearchCounts counts) {
+        Town source = getTown(town1);
+        Town destination = getTown(town2);
+
+        if (useHierarchy) {
+            ContractionHierarchy ch = getContractionHierarchy();
+            if (counts == null) {
+                return ch.route(source, destination);
+            }
+            SearchCounts before = new SearchCounts();
+            ch.addSearchCounts(before);
+            Route route = ch.route(source, destination);
+            ch.addSearchCounts(counts);
+            counts.subtract(before);
+            return route;
+        }
+
+        SearchCounts before = null;
+        if (counts != null) {
+            before = new SearchCounts();
+            tGraph.addSearchCounts(before);
+        }
+        Route route = _graphRoute(source, destination);
+        if (counts != null) {
+            tGraph.addSearchCounts(counts);
+            counts.subtract(before);
+        }
+        return route;
+    }
+
+    // Helper method answering a route query from the path cache or with a search of the graph
+    private Route _graphRoute(Town source, Town destination) {
+        if (source == null || pathCache.getCapacity() == 0) {
+            return tGraph.route(source, destination);
+        }
+
+        long version = tGraph.getVersion();
+        ShortestPathTree tree = pathCache.get(source, version);
+
+        if (tree == null) {
+            tree = tGraph.shortestPathTree(source);
+            if (tGraph.getVersion() == version) {
+                pathCache.put(source, tree, version);
+            }
+        }
+
+        return tree.routeTo(destination);
+    }
+
+    /**
+     * Retrieves up to k alternative routes between two towns, shortest first, none of
+     * which visits a town twice.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @param k     the number of routes wanted
+     * @return the routes, each in the format of getPath; fewer than k if there are no more
+     */
+    public ArrayList<ArrayList<String>> getAlternativePaths(String town1, String town2, int k) {
+        return tGraph.kShortestPaths(getTown(town1), getTown(town2), k);
+    }
+
+    /**
+     * Retrieves the shortest paths for many pairs of towns at once. Pairs are grouped by
+     * starting town so that each starting town needs only one search, which stops once
+     * all of its destinations are reached, and the groups are searched in parallel.
+     *
+     * @param origins      the names of the starting towns
+     * @param destinations the names of the destination towns, one for each starting town
+     * @return the path for each pair, in the order of the pairs, as getPath would return it
+     * @throws IllegalArgumentException if the two lists differ in length
+     */
+    public ArrayList<ArrayList<String>> getPaths(List<String> origins, List<String> destinations) {
+        if (origins.size() != destinations.size()) {
+            throw new IllegalArgumentException("origins and destinations differ in length: "
+                    + origins.size() + " and " + destinations.size());
+        }
+
+        ArrayList<ArrayList<String>> paths = new ArrayList<>(Collections.nCopies(origins.size(), (ArrayList<String>) null));
+
+        if (useHierarchy) {
+            ContractionHierarchy ch = getContractionHierarchy();
+            IntStream.range(0, origins.size()).parallel().forEach(i ->
+                    paths.set(i, ch.shortestPath(getTown(origins.get(i)), getTown(destinations.get(i)))));
+            return paths;
+        }
+
+        Map<Town, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < origins.size(); i++) {
+            Town source = getTown(origins.get(i));
+            if (source == null) {
+                paths.set(i, new ArrayList<>());
+            } else {
+                groups.computeIfAbsent(source, t -> new ArrayList<>()).add(i);
+            }
+        }
+
+        groups.entrySet().parallelStream().forEach(group -> _pathsFrom(group.getKey(), group.getValue(), destinations, paths));
+        return paths;
+    }
+
+    // Helper method to fill in the paths of all pairs that start at one town, using the
+    // cached tree of that town if there is one and a search that stops at the last
+    // destination otherwise
+    private void _pathsFrom(Town source, List<Integer> pairs, List<String> destinations, ArrayList<ArrayList<String>> paths) {
+        ShortestPathTree tree = pathCache.getCapacity() == 0 ? null : pathCache.get(source, tGraph.getVersion());
+
+        if (tree == null) {
+            Set<Town> targets = new HashSet<>();
+            for (int i : pairs) {
+                Town destination = getTown(destinations.get(i));
+                if (destination != null) {
+                    targets.add(destination);
                 }
             }
-        } catch (NumberFormatException e) {
-            e.printStackTrace();
+            tree = tGraph.shortestPathTree(source, targets);
+        }
+
+        for (int i : pairs) {
+            paths.set(i, tree.pathTo(getTown(destinations.get(i))));
+        }
+    }
+
+    /**
+     * Computes the shortest distance between every pair of towns, running one search
+     * per town in parallel. Rows and columns follow the order of allTowns().
+     *
+     * @return the distance matrix; unreachable pairs hold GraphSnapshot.UNREACHABLE
+     */
+    public int[][] distanceMatrix() {
+        return tGraph.snapshot().distanceMatrix();
+    }
+
+    /**
+     * Checks if a path exists between two towns, using the component labels of the
+     * current graph instead of a search.
+     *
+     * @param town1 the name of the first town
+     * @param town2 the name of the second town
+     * @return true if both towns exist and are connected, false otherwise
+     */
+    public boolean isConnected(String town1, String town2) {
+        return tGraph.isConnected(getTown(town1), getTown(town2));
+    }
+
+    /**
+     * Counts the disconnected regions of the map; a town without roads is a region of its own.
+     *
+     * @return the number of connected components
+     */
+    public int getRegionCount() {
+        return tGraph.connectedComponents().getComponentCount();
+    }
+
+    /**
+     * Retrieves the roads of a minimum spanning tree: the cheapest set of roads that
+     * keeps every region connected, as when planning which roads to maintain.
+     *
+     * @return a sorted list of the road names
+     */
+    public ArrayList<String> getBackboneRoads() {
+        ArrayList<String> names = new ArrayList<String>();
+        for (Road road : tGraph.minimumSpanningTree()) {
+            names.add(road.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Sets whether getPath answers queries from a contraction hierarchy instead of
+     * Dijkstra's algorithm. The hierarchy is built on the first query after it is
+     * turned on and again on the first query after any change to the graph, so it
+     * pays off for maps that are queried often and changed rarely.
+     *
+     * @param use true to route with the contraction hierarchy
+     */
+    public void setUseContractionHierarchy(boolean use) {
+        useHierarchy = use;
+    }
+
+    /**
+     * Gets a contraction hierarchy for the current graph, building it if the graph has
+     * changed since the last one was built.
+     * A hierarchy that is up to date is returned without locking, so concurrent
+     * queries do not wait on each other or on allTowns and allRoads.
+     *
+     * @return the contraction hierarchy
+     */
+    public ContractionHierarchy getContractionHierarchy() {
+        ContractionHierarchy ch = hierarchy;
+        if (ch != null && ch.getVersion() == tGraph.getVersion()) {
+            return ch;
+        }
+        // Check again under the lock so threads that miss together build it only once
+        synchronized (hierarchyLock) {
+            ch = hierarchy;
+            if (ch == null || ch.getVersion() != tGraph.getVersion()) {
+                ch = new ContractionHierarchy(tGraph);
+                hierarchy = ch;
+            }
+            return ch;
         }
     }
+
+    /**
+     * Gets the cache of shortest-path trees used by getPath, including its hit, miss
+     * and eviction counters.
+     *
+     * @return the path cache
+     */
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    /**
+     * Gets the metrics of getPath and getRoute queries: their latency percentiles and
+     * the search work each did. Metrics are off until enabled.
+     *
+     * @return the query metrics
+     */
+    public QueryMetrics getQueryMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Turns the measuring of getPath and getRoute queries on or off.
+     *
+     * @param enabled true to measure queries
+     */
+    public void setQueryMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Populates the town graph from a file with one road per line in the format
+     * roadName,weight;town1;town2. Lines are parsed in parallel and added in one
+     * bulk insert; lines that cannot be used are listed in the returned report
+     * instead of being loaded.
+     *
+     * @param selectedFile the file containing road information
+     * @return a report of what was loaded, with the line number of every rejected line
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException           if there is an error reading the file
+     */
+    public LoadReport populateTownGraph(File selectedFile) throws FileNotFoundException, IOException {
+        return new RoadFileLoader().load(selectedFile, tGraph);
+    }
+
+    /**
+     * Saves the town graph in the binary format of GraphFile, which loads much faster
+     * than the text format read by populateTownGraph.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void saveTownGraph(File file) throws IOException {
+        GraphFile.save(tGraph, file);
+    }
+
+    /**
+     * Populates the town graph from a file written by saveTownGraph. The file is read
+     * without parsing text, but every town and road is still added to the graph.
+     *
+     * @param file the binary graph file
+     * @return the number of roads added
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException           if the file cannot be read or is not a graph file
+     */
+    public int loadTownGraph(File file) throws FileNotFoundException, IOException {
+        return GraphFile.loadInto(file, tGraph);
+    }
 }
@@ -4,7 +4,9 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 
 import org.junit.After;
@@ -97,6 +99,26 @@ public class TownGraphManager_StudentTest {
         assertEquals("City_4", towns.get(4));
         assertEquals("City_9", towns.get(9));
     }
+
+    /**
+     * Tests that the sorted town and road lists follow changes to the graph and that
+     * changing a returned list does not affect later calls.
+     */
+    @Test
+    public void testAllTownsAndRoadsAfterChanges() {
+        ArrayList<String> towns = tGraph.allTowns();
+        towns.clear();
+        assertEquals(10, tGraph.allTowns().size());
+
+        tGraph.addTown("City_0");
+        assertEquals("City_0", tGraph.allTowns().get(0));
+        assertEquals(11, tGraph.allTowns().size());
+
+        tGraph.addRoad("City_0", town[0], 1, "Road_0");
+        assertEquals("Road_0", tGraph.allRoads().get(0));
+        tGraph.deleteRoadConnection("City_0", town[0], "Road_0");
+        assertEquals("Road_A", tGraph.allRoads().get(0));
+    }
     
     /**
      * Tests the addition of a town and verifies if the town list is updated correctly.
@@ -169,6 +191,34 @@ public class TownGraphManager_StudentTest {
         assertEquals(false, tGraph.containsTown("City_3"));
     }
 
+    /**
+     * Tests that towns are found by name, ignoring case when adding roads, and that
+     * deleted towns can no longer be found.
+     */
+    @Test
+    public void testTownNameLookup() {
+        assertEquals(town[2], tGraph.getTown(town[2]).getName());
+        assertNull(tGraph.getTown("city_3"));
+        assertNull(tGraph.getRoad(town[0], "Nowhere"));
+
+        assertTrue(tGraph.addRoad("CITY_1", "city_10", 7, "Road_Y"));
+        assertEquals("Road_Y", tGraph.getRoad(town[9], town[0]));
+
+        tGraph.addTown("city_4");
+        assertTrue(tGraph.addRoad("city_4", "city_1", 2, "Road_Z"));
+        assertEquals("Road_Z", tGraph.getRoad(town[0], "city_4"));
+        assertNull(tGraph.getRoad(town[0], town[3]));
+
+        tGraph.deleteTown("city_4");
+        assertNull(tGraph.getTown("city_4"));
+        assertTrue(tGraph.addRoad("city_4", "city_6", 9, "Road_W"));
+        assertEquals("Road_W", tGraph.getRoad(town[3], town[5]));
+
+        tGraph.deleteTown(town[3]);
+        assertNull(tGraph.getTown(town[3]));
+        assertFalse(tGraph.addRoad("CITY_4", town[0], 1, "Road_V"));
+    }
+
     /**
      * Tests the retrieval of a path between two towns.
      */
@@ -215,5 +265,409 @@ public class TownGraphManager_StudentTest {
         
         newFile.delete();
     }
-}
 
+    /**
+     * Tests that lines which cannot be loaded are reported with their line numbers.
+     *
+     * @throws IOException if the file cannot be written or read.
+     */
+    @Test
+    public void testPopulateTownGraphReport() throws IOException {
+        File newFile = new File("testReportFile.txt");
+
+        PrintWriter pw = new PrintWriter(newFile);
+        pw.println("Road_A,14;Town_A;Town_B");
+        pw.println("Road_B;Town_B;Town_C");
+        pw.println("");
+        pw.println("Road_C,x8;Town_C;Town_D");
+        pw.println(" Road_D , 5 ; Town_C ; Town_D ");
+        pw.println("Road_E,7;Town_B;Town_A");
+        pw.println("Road_A,9;Town_B;Town_A");
+        pw.close();
+
+        LoadReport report = ((TownGraphManager) tGraph).populateTownGraph(newFile);
+        newFile.delete();
+
+        assertEquals(7, report.getLines());
+        assertEquals(4, report.getTownsAdded());
+        assertEquals(3, report.getRoadsAdded());
+        assertEquals(3, report.getProblems().size());
+        assertEquals(2, report.getProblems().get(0).getLineNumber());
+        assertEquals(4, report.getProblems().get(1).getLineNumber());
+        assertEquals(7, report.getProblems().get(2).getLineNumber());
+        assertEquals("Road_D", tGraph.getRoad("Town_D", "Town_C"));
+        assertEquals("Road_E", tGraph.getRoad("Town_A", "Town_B"));
+    }
+
+    /**
+     * Tests that a graph loaded from a text file and saved in the binary format loads
+     * back with the same towns, roads and paths.
+     *
+     * @throws IOException if a file cannot be written or read.
+     */
+    @Test
+    public void testSaveAndLoadTownGraph() throws IOException {
+        File textFile = new File("testRoundTrip.txt");
+        File binaryFile = new File("testRoundTrip.graph");
+
+        PrintWriter pw = new PrintWriter(textFile, "UTF-8");
+        pw.println("Road_A,14;Town_A;Town_B");
+        pw.println("Road_B,3;Town_B;Town_C");
+        pw.println("Road_C,8;Town_C;Town_D");
+        pw.println("Road_D,2;Town_A;Town_C");
+        pw.println("Road_\u00c9,6;Town_\u00c9;Town_D");
+        pw.close();
+
+        TownGraphManager text = new TownGraphManager();
+        text.populateTownGraph(textFile);
+        text.addTown("Town_F");
+        text.saveTownGraph(binaryFile);
+
+        TownGraphManager binary = new TownGraphManager();
+        assertEquals(5, binary.loadTownGraph(binaryFile));
+        textFile.delete();
+        binaryFile.delete();
+
+        assertEquals(text.allTowns(), binary.allTowns());
+        assertEquals(text.allRoads(), binary.allRoads());
+        for (String from : text.allTowns()) {
+            for (String to : text.allTowns()) {
+                assertEquals(text.getPath(from, to), binary.getPath(from, to));
+            }
+        }
+        assertEquals(3, binary.getPath("Town_A", "Town_\u00c9").size());
+    }
+
+    /**
+     * Tests that a file that is not a binary graph file is rejected.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Test
+    public void testLoadTownGraphRejectsTextFile() throws IOException {
+        File textFile = new File("testNotBinary.txt");
+        PrintWriter pw = new PrintWriter(textFile);
+        pw.println("Road_A,14;Town_A;Town_B");
+        pw.println("Road_B,3;Town_B;Town_C");
+        pw.close();
+
+        try {
+            ((TownGraphManager) tGraph).loadTownGraph(textFile);
+            fail("A text file should not load as a binary graph");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            textFile.delete();
+        }
+    }
+
+    /**
+     * Tests that a binary graph file whose CSR section points outside the graph is
+     * rejected when it is loaded rather than when it is searched.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Test
+    public void testLoadTownGraphRejectsBadIds() throws IOException {
+        File binaryFile = new File("testBadIds.graph");
+        ((TownGraphManager) tGraph).saveTownGraph(binaryFile);
+
+        // Overwrite the first CSR target, which follows the header, the coordinates of the
+        // 10 towns, the sources, destinations and weights of the 9 roads and the 11 offsets
+        try (RandomAccessFile out = new RandomAccessFile(binaryFile, "rw")) {
+            out.seek(32 + 16 * 10 + 4 * (3 * 9 + 11));
+            out.write(new byte[] { 0x10, 0x27, 0, 0 });
+        }
+
+        try {
+            new TownGraphManager().loadTownGraph(binaryFile);
+            fail("A file with a town id out of range should not load");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            binaryFile.delete();
+        }
+    }
+
+    /**
+     * Tests that getPath reuses cached searches, repairs them when a road changes and
+     * drops them when the graph changes in other ways.
+     */
+    @Test
+    public void testPathCache() {
+        PathCache cache = ((TownGraphManager) tGraph).getPathCache();
+
+        tGraph.getPath(town[0], town[9]);
+        ArrayList<String> path = tGraph.getPath(town[0], town[4]);
+        assertEquals(4, path.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        tGraph.addRoad(town[0], town[4], 1, "Road_Z");
+        path = tGraph.getPath(town[0], town[4]);
+        assertEquals(1, path.size());
+        assertEquals("City_1 via Road_Z to City_5 1 mi", path.get(0));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getRepairs());
+
+        tGraph.deleteTown(town[9]);
+        assertEquals(0, tGraph.getPath(town[0], town[9]).size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    /**
+     * Tests that cached paths follow road weight changes, road removals and new roads.
+     */
+    @Test
+    public void testSetRoadWeight() {
+        TownGraphManager manager = (TownGraphManager) tGraph;
+        tGraph.addRoad(town[0], town[9], 31, "Road_Z");
+        assertEquals(9, tGraph.getPath(town[0], town[9]).size());
+
+        assertTrue(manager.setRoadWeight(town[4], town[5], 20));
+        ArrayList<String> path = tGraph.getPath(town[0], town[9]);
+        assertEquals(1, path.size());
+        assertEquals("City_1 via Road_Z to City_10 31 mi", path.get(0));
+        assertEquals(6, tGraph.getPath(town[0], town[6]).size());
+
+        assertTrue(manager.setRoadWeight(town[0], town[9], 50));
+        assertEquals(9, tGraph.getPath(town[0], town[9]).size());
+
+        assertTrue(tGraph.deleteRoadConnection(town[4], town[5], "Road_E"));
+        assertEquals(1, tGraph.getPath(town[0], town[9]).size());
+        assertEquals("City_10 via Road_I to City_9 4 mi", tGraph.getPath(town[0], town[8]).get(1));
+
+        assertFalse(manager.setRoadWeight(town[0], town[5], 1));
+        assertEquals(0, manager.getPathCache().getInvalidations());
+        assertEquals(1, manager.getPathCache().getMisses());
+    }
+
+    /**
+     * Tests that batched paths come back in the order of the pairs and match getPath.
+     */
+    @Test
+    public void testGetPaths() {
+        tGraph.addRoad(town[0], town[9], 20, "Road_Z");
+        ArrayList<String> origins = new ArrayList<>();
+        ArrayList<String> destinations = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            for (int j = 0; j < 10; j += 3) {
+                origins.add(town[j]);
+                destinations.add(town[i]);
+            }
+        }
+        origins.add("Nowhere");
+        destinations.add(town[0]);
+        origins.add(town[0]);
+        destinations.add("Nowhere");
+
+        ArrayList<ArrayList<String>> paths = ((TownGraphManager) tGraph).getPaths(origins, destinations);
+
+        assertEquals(origins.size(), paths.size());
+        for (int i = 0; i < origins.size(); i++) {
+            assertEquals(tGraph.getPath(origins.get(i), destinations.get(i)), paths.get(i));
+        }
+        assertEquals("City_1 via Road_Z to City_10 20 mi", paths.get(0).get(0));
+        assertEquals(0, paths.get(paths.size() - 1).size());
+    }
+
+    /**
+     * Tests that batched paths need one destination for every starting town.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPathsMismatchedLists() {
+        ArrayList<String> origins = new ArrayList<>();
+        origins.add(town[0]);
+        ((TownGraphManager) tGraph).getPaths(origins, new ArrayList<String>());
+    }
+
+    /**
+     * Tests that the least recently used tree is evicted when the cache is full.
+     */
+    @Test
+    public void testPathCacheEviction() {
+        TownGraphManager manager = new TownGraphManager(2);
+        for (String t : town) {
+            manager.addTown(t);
+        }
+        manager.addRoad(town[0], town[1], 3, "Road_A");
+
+        manager.getPath(town[0], town[1]);
+        manager.getPath(town[1], town[0]);
+        manager.getPath(town[0], town[1]);
+        manager.getPath(town[2], town[0]);
+
+        assertEquals(2, manager.getPathCache().size());
+        assertEquals(1, manager.getPathCache().getEvictions());
+        manager.getPath(town[0], town[1]);
+        assertEquals(2, manager.getPathCache().getHits());
+    }
+
+    /**
+     * Tests that routing through the contraction hierarchy gives the same paths and
+     * follows changes to the graph.
+     */
+    @Test
+    public void testContractionHierarchyPath() {
+        TownGraphManager manager = (TownGraphManager) tGraph;
+        manager.addRoad(town[0], town[5], 25, "Road_X");
+        manager.addRoad(town[2], town[7], 12, "Road_Y");
+        ArrayList<String> expected = manager.getPath(town[0], town[9]);
+
+        manager.setUseContractionHierarchy(true);
+        assertEquals(expected, manager.getPath(town[0], town[9]));
+        assertEquals(tGraph.getPath(town[9], town[0]).size(), expected.size());
+        assertTrue(manager.getPath(town[0], town[0]).isEmpty());
+
+        manager.addRoad(town[0], town[9], 5, "Road_Z");
+        ArrayList<String> path = manager.getPath(town[9], town[0]);
+        assertEquals(1, path.size());
+        assertEquals("City_10 via Road_Z to City_1 5 mi", path.get(0));
+    }
+
+    /**
+     * Tests that routes give the distance and road count of getPath, with and without
+     * the contraction hierarchy.
+     */
+    @Test
+    public void testGetRoute() {
+        TownGraphManager manager = (TownGraphManager) tGraph;
+        manager.addRoad(town[2], town[7], 12, "Road_Y");
+
+        Route route = manager.getRoute(town[0], town[9]);
+        assertTrue(route.isFound());
+        assertEquals(26, route.getDistance());
+        assertEquals(5, route.getHopCount());
+        assertEquals(town[0], route.getTown(0).getName());
+        assertEquals("Road_Y", route.getRoadName(2));
+        assertEquals(manager.getPath(town[0], town[9]), route.toSteps());
+
+        manager.setUseContractionHierarchy(true);
+        Route hierarchyRoute = manager.getRoute(town[0], town[9]);
+        assertEquals(26, hierarchyRoute.getDistance());
+        assertEquals(route.toSteps(), hierarchyRoute.toSteps());
+
+        assertFalse(manager.getRoute(town[0], "Nowhere").isFound());
+        assertEquals(0, manager.getRoute(town[3], town[3]).getHopCount());
+    }
+
+    /**
+     * Tests the backbone roads and the regions left after a town is deleted.
+     */
+    @Test
+    public void testRegionsAndBackbone() {
+        TownGraphManager manager = (TownGraphManager) tGraph;
+        manager.addRoad(town[2], town[7], 12, "Road_Y");
+        assertEquals(1, manager.getRegionCount());
+        assertEquals(9, manager.getBackboneRoads().size());
+        assertFalse(manager.getBackboneRoads().contains("Road_Y"));
+
+        manager.deleteTown(town[4]);
+        assertEquals(1, manager.getRegionCount());
+        assertTrue(manager.getBackboneRoads().contains("Road_Y"));
+
+        manager.deleteRoadConnection(town[2], town[7], "Road_Y");
+        assertEquals(2, manager.getRegionCount());
+        assertFalse(manager.isConnected(town[0], town[9]));
+        assertTrue(manager.isConnected(town[5], town[9]));
+        assertFalse(manager.isConnected(town[0], "Nowhere"));
+        assertTrue(manager.getPath(town[0], town[9]).isEmpty());
+    }
+
+    /**
+     * Tests that the distance matrix follows the order of allTowns.
+     */
+    @Test
+    public void testDistanceMatrix() {
+        tGraph.addTown("City_11");
+        ArrayList<String> towns = tGraph.allTowns();
+        int[][] matrix = ((TownGraphManager) tGraph).distanceMatrix();
+
+        int first = towns.indexOf(town[0]);
+        int last = towns.indexOf(town[9]);
+        int lonely = towns.indexOf("City_11");
+        assertEquals(towns.size(), matrix.length);
+        assertEquals(30, matrix[first][last]);
+        assertEquals(30, matrix[last][first]);
+        assertEquals(GraphSnapshot.UNREACHABLE, matrix[first][lonely]);
+    }
+
+    /**
+     * Tests that a second road with a new name can join two towns, that paths use the
+     * shorter one, and that each road is deleted by its own name.
+     */
+    @Test
+    public void testParallelRoads() {
+        assertFalse(tGraph.addRoad(town[0], town[1], 1, "Road_A"));
+        assertTrue(tGraph.addRoad(town[1], town[0], 1, "Highway_A"));
+        assertEquals("Highway_A", tGraph.getRoad(town[0], town[1]));
+        assertEquals("City_1 via Highway_A to City_2 1 mi", tGraph.getPath(town[0], town[1]).get(0).trim());
+        assertEquals(10, tGraph.allRoads().size());
+
+        assertTrue(tGraph.deleteRoadConnection(town[0], town[1], "Highway_A"));
+        assertEquals("City_1 via Road_A to City_2 3 mi", tGraph.getPath(town[0], town[1]).get(0).trim());
+        assertFalse(tGraph.deleteRoadConnection(town[0], town[1], "Highway_A"));
+        assertTrue(tGraph.containsRoadConnection(town[0], town[1]));
+    }
+
+    /**
+     * Tests that query metrics stay empty while disabled, count the search work of a
+     * path cache miss but not of a hit, and cover contraction hierarchy queries.
+     */
+    @Test
+    public void testQueryMetrics() {
+        TownGraphManager manager = (TownGraphManager) tGraph;
+        manager.getPath(town[0], town[9]);
+        assertEquals(0, manager.getQueryMetrics().snapshot().getQueries());
+
+        manager.setQueryMetricsEnabled(true);
+        manager.getPath(town[0], town[9]);
+        QueryMetrics.Snapshot first = manager.getQueryMetrics().snapshot();
+        assertEquals(1, first.getQueries());
+        assertEquals(0, first.getSearches());
+
+        manager.getPath(town[9], town[0]);
+        manager.getPath(town[9], town[5]);
+        QueryMetrics.Snapshot snapshot = manager.getQueryMetrics().snapshot();
+        assertEquals(3, snapshot.getQueries());
+        assertEquals(1, snapshot.getSearches());
+        assertEquals(10, snapshot.getSettled());
+        assertEquals(9, snapshot.getRelaxed());
+        assertEquals(20, snapshot.getHeapOperations());
+        assertTrue(snapshot.getLatencyAtPercentile(50) <= snapshot.getLatencyAtPercentile(99));
+        assertTrue(snapshot.getLatencyAtPercentile(100) == snapshot.getMaxLatency());
+
+        manager.setUseContractionHierarchy(true);
+        manager.getPath(town[0], town[9]);
+        snapshot = manager.getQueryMetrics().snapshot();
+        assertEquals(4, snapshot.getQueries());
+        assertEquals(2, snapshot.getSearches());
+        assertTrue(snapshot.getSettled() > 10);
+
+        manager.getQueryMetrics().reset();
+        assertEquals(0, manager.getQueryMetrics().snapshot().getQueries());
+        assertEquals(0, manager.getQueryMetrics().snapshot().getSettled());
+    }
+
+    /**
+     * Tests the percentiles of a latency histogram.
+     */
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 5_000);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 9_900);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(500_500, histogram.getMean(), 1e-6);
+
+        histogram.record(1L << 50);
+        assertEquals(1L << 50, histogram.getMax());
+        assertEquals(1L << 50, histogram.copy().getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,143 @@
+package graphs;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns towns by name and gives each name a dense int id, starting from 0.
+ *
+ * The registry keeps one canonical Town per name, so looking a name up never
+ * creates a Town, and ids let searches keep their distance and predecessor
+ * tables in plain arrays instead of maps. An id is stable: it stays with its
+ * name for the lifetime of the registry, even if the town is removed from the
+ * graph and added again later, so ids run from 0 to size() - 1 with no reuse.
+ *
+ * Ids are kept here, by name, so the same Town instance can be canonical in any
+ * number of registries and a town holds no reference to the registries that
+ * know it. A town does remember the last id it was registered under, as a hint
+ * that makes finding the id of a canonical instance two array reads; the hint
+ * is only trusted if this registry's town at that id is the very instance.
+ * Lookups are safe from any thread; registering is synchronized.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+public class TownRegistry {
+
+    // Id of each name
+    private final Map<String, Integer> ids;
+
+    // Canonical town of each id; only the first size entries are in use
+    private volatile Town[] byId;
+    private volatile int size;
+
+    /**
+     * Constructs an empty registry.
+     */
+    public TownRegistry() {
+        ids = new ConcurrentHashMap<>();
+        byId = new Town[16];
+    }
+
+    /**
+     * Gets the canonical town with the given name, registering a new one if the name is new.
+     *
+     * @param name The name of the town.
+     * @return The canonical town.
+     */
+    public Town intern(String name) {
+        Town t = find(name);
+        return t != null ? t : intern(new Town(name));
+    }
+
+    /**
+     * Gets the canonical town with the same name as the given one. If the name is new,
+     * the given town becomes canonical.
+     *
+     * @param t The town to intern.
+     * @return The canonical town.
+     */
+    public synchronized Town intern(Town t) {
+        Integer id = ids.get(t.getName());
+        return id != null ? byId[id] : _register(t, size);
+    }
+
+    /**
+     * Makes the given town the canonical town of its name, keeping the id of the name
+     * if it has one. Used when a town joins a graph, so the graph hands out the very
+     * instance it was given, even if another graph holds the same instance. The
+     * previous canonical instance keeps the same id.
+     *
+     * @param t The town to make canonical.
+     * @return t itself.
+     */
+    synchronized Town replace(Town t) {
+        Integer id = ids.get(t.getName());
+        return _register(t, id == null ? size : id);
+    }
+
+    // Helper method to record a town under an id; an id equal to size is a new one
+    private Town _register(Town t, int id) {
+        if (id == size && id == byId.length) {
+            byId = Arrays.copyOf(byId, id * 2);
+        }
+        byId[id] = t;
+        ids.put(t.getName(), id);
+        t.idHint = id;
+        if (id == size) {
+            size = id + 1;
+        }
+        return t;
+    }
+
+    /**
+     * Finds the canonical town with the given name without registering anything.
+     *
+     * @param name The name of the town.
+     * @return The canonical town, or null if the name was never registered.
+     */
+    public Town find(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? null : byId[id];
+    }
+
+    /**
+     * Gets the id of a town's name.
+     *
+     * @param t The town to look up; any instance with a registered name will do.
+     * @return The id, or -1 if t is null or its name was never registered.
+     */
+    public int idOf(Town t) {
+        if (t == null) {
+            return -1;
+        }
+        int hint = t.idHint;
+        Town[] towns = byId;
+        if (hint < towns.length && towns[hint] == t) {
+            return hint;
+        }
+        Integer id = ids.get(t.getName());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the canonical town with the given id.
+     *
+     * @param id The id, from 0 to size() - 1.
+     * @return The canonical town.
+     */
+    public Town townAt(int id) {
+        return byId[id];
+    }
+
+    /**
+     * Gets the number of names registered so far, which is one more than the largest id.
+     *
+     * @return The number of ids handed out.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -101,4 +101,19 @@ public class Town_StudentTest {
     public void testHashCode() {
         assertFalse(town1.hashCode() == town2.hashCode());
     }
+
+    /**
+     * Tests the optional coordinates of the Town class.
+     */
+    @Test
+    public void testCoordinates() {
+        assertFalse(town1.hasCoordinates());
+
+        Town here = new Town("Here", 1, 2);
+        Town there = new Town("There", 4, 6);
+        assertTrue(here.hasCoordinates());
+        assertEquals(5.0, here.distanceTo(there), 0.0001);
+        assertEquals(2.0, new Town(here).getY(), 0.0001);
+        assertTrue(here.equals(new Town("Here")));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package graphs;
+
+/**
+ * A disjoint-set forest over dense int ids, with union by size and path halving,
+ * so a sequence of finds and unions runs in near-constant time per operation.
+ *
+ * @author Moises Merlos
+ * @date 12/03/2023
+ *
+ */
+class UnionFind {
+
+    private final int[] parent;  // Parent of each id; a root is its own parent
+    private final int[] size;    // Number of ids in the set of each root
+    private int sets;            // Number of disjoint sets
+
+    /**
+     * Constructs a forest where each id in [0, count) is a set of its own.
+     *
+     * @param count The number of ids.
+     */
+    UnionFind(int count) {
+        parent = new int[count];
+        size = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        sets = count;
+    }
+
+    /**
+     * Finds the representative of the set holding an id.
+     *
+     * @param id The id to look up.
+     * @return The root of its set.
+     */
+    int find(int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * Merges the sets holding two ids.
+     *
+     * @param a The first id.
+     * @param b The second id.
+     * @return true if the ids were in different sets, false if they were already joined.
+     */
+    boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        sets--;
+        return true;
+    }
+
+    /**
+     * Gets the number of disjoint sets.
+     *
+     * @return The number of sets.
+     */
+    int sets() {
+        return sets;
+    }
+}